@@ -0,0 +1,79 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jcodings.Encoding;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Same pattern and (pure ASCII) subject run through both interpreter loops:
+ * ASCII and UTF8 with CR_7_BIT go through ByteCodeMachine.executeSb, plain UTF8 through execute.
+ * The automaton is off so that every pattern gets there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djoni.use_automaton=false")
+@State(Scope.Thread)
+public class ExecuteBenchmark {
+    @Param({"ASCII", "UTF8", "UTF8_CR_7_BIT"})
+    public String mode;
+
+    @Param({"(\\w+)\\s*=\\s*(\\w+);", "^(?:[a-z0-9_.]+|\\s)*$", "(a|b|c)*d"})
+    public String pattern;
+
+    private Regex regex;
+    private byte[] str;
+    private int option;
+
+    @Setup
+    public void setup() {
+        Encoding enc = Patterns.encoding(mode.startsWith("UTF8") ? "UTF8" : "ASCII");
+        option = mode.endsWith("CR_7_BIT") ? Option.CR_7_BIT : Option.NONE;
+        byte[] reg = Patterns.bytes(pattern);
+        regex = new Regex(reg, 0, reg.length, Option.NONE, enc, Syntax.DEFAULT);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 64; i++) sb.append("key_").append(i).append(" = value_").append(i).append("; abcabc ");
+        sb.append('d');
+        str = Patterns.bytes(sb.toString());
+    }
+
+    @Benchmark
+    public int search() {
+        return regex.matcherNoRegion(str, 0, str.length).search(0, str.length, option);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.SJISEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One case per Search.Forward strategy, the needle sits at the end of a 4k haystack.
+ * Setup fails when the regex does not select the expected strategy so that a change
+ * in optimizer heuristics can't silently turn one benchmark into another.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ForwardSearchBenchmark {
+    @Param({
+        "EXACT_FORWARD",
+        "EXACT_SB_FORWARD",
+        "EXACT_IC_FORWARD",
+        "EXACT_IC_SB_FORWARD",
+        "EXACT_BM_FORWARD",
+        "EXACT_BM_NOT_REV_FORWARD",
+        "EXACT_BM_NOT_REV_IC_FORWARD",
+        "EXACT_RARE_BYTE_FORWARD",
+        "MAP_FORWARD",
+        "MAP_SB_FORWARD",
+        "LITERAL_SET_FORWARD",
+    })
+    public String strategy;
+
+    @Param({"4096"})
+    public int length;
+
+    private Regex regex;
+    private byte[] str;
+
+    @Setup
+    public void setup() {
+        final String pattern, needle;
+        final Encoding enc;
+        switch (strategy) {
+        case "EXACT_FORWARD":               pattern = "z";                  needle = "z";           enc = UTF8Encoding.INSTANCE; break;
+        case "EXACT_SB_FORWARD":            pattern = "z";                  needle = "z";           enc = ASCIIEncoding.INSTANCE; break;
+        case "EXACT_IC_FORWARD":            pattern = "(?i)needle";         needle = "NeEdLe";      enc = UTF8Encoding.INSTANCE; break;
+        case "EXACT_IC_SB_FORWARD":         pattern = "(?i)needle";         needle = "NeEdLe";      enc = ASCIIEncoding.INSTANCE; break;
+        case "EXACT_BM_FORWARD":            pattern = "needle";             needle = "needle";      enc = UTF8Encoding.INSTANCE; break;
+        case "EXACT_BM_NOT_REV_FORWARD":    pattern = "needle";             needle = "needle";      enc = SJISEncoding.INSTANCE; break;
+        case "EXACT_BM_NOT_REV_IC_FORWARD": pattern = "(?i)needle";         needle = "NeEdLe";      enc = SJISEncoding.INSTANCE; break;
+        case "EXACT_RARE_BYTE_FORWARD":     pattern = "\"id\":";            needle = "\"id\":";     enc = UTF8Encoding.INSTANCE; break;
+        case "MAP_FORWARD":                 pattern = "[x-z]1|[X-Z]2";      needle = "Y2";          enc = UTF8Encoding.INSTANCE; break;
+        case "MAP_SB_FORWARD":              pattern = "[x-z]1|[X-Z]2";      needle = "Y2";          enc = ASCIIEncoding.INSTANCE; break;
+        case "LITERAL_SET_FORWARD":         pattern = "pin|awl|tack|hook";  needle = "hook";        enc = UTF8Encoding.INSTANCE; break;
+        default: throw new IllegalArgumentException("unknown strategy: " + strategy);
+        }
+
+        byte[] reg = Patterns.bytes(pattern);
+        regex = new Regex(reg, 0, reg.length, Option.NONE, enc, Syntax.DEFAULT);
+        String info = regex.optimizeInfoToString();
+        if (!info.startsWith("optimize: " + strategy + "\n")) {
+            throw new IllegalStateException("/" + pattern + "/ selected " + info.substring(0, info.indexOf('\n')) + ", expected " + strategy);
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        String filler = "the quick brown fox jumps over the lame dog ";
+        while (sb.length() < length - needle.length()) sb.append(filler);
+        sb.setLength(length - needle.length());
+        sb.append(needle);
+        str = Patterns.bytes(sb.toString());
+    }
+
+    @Benchmark
+    public int search() {
+        return regex.matcherNoRegion(str, 0, str.length).search(0, str.length, Option.NONE);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.bench;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+
+final class Patterns {
+    // the pairs that used to live in BenchRailsRegs, BenchSeveralRegexps and BenchGreedyBacktrack
+    static final String[][] RAILS = {
+        {"a.*?[b-z]{2,4}aaaaaa", "afdgdsgderaabxxaaaaaaaaaaaaaaaaaaaaaaaa"},
+        {"://", "/shop/viewCategory.shtml?category=DOGS"},
+        {"^\\w+\\://[^/]+(/.*|$)$", "/shop/viewCategory.shtml?category=DOGS"},
+        {"\\A/?\\Z", "/shop/viewCategory.shtml"},
+        {"\\A/shop/signonForm\\.shtml/?\\Z", "/shop/viewCategory.shtml"},
+        {"\\A/shop/viewCategory\\.shtml/?\\Z", "/shop/viewCategory.shtml"},
+        {"\\A(?:::)?([A-Z]\\w*(?:::[A-Z]\\w*)*)\\z", "CategoriesController"},
+        {"\\Ainsert", "SELECT * FROM sessions WHERE (session_id = '1b341ffe23b5298676d535fcabd3d0d7')  LIMIT 1"},
+        {"\\A\\(?\\s*(select|show)", "SELECT * FROM sessions WHERE (session_id = '1b341ffe23b5298676d535fcabd3d0d7')  LIMIT 1"},
+        {".*?\n", "1b341ffe23b5298676d535fcabd3d0d7"},
+        {"^find_(all_by|by)_([_a-zA-Z]\\w*)$", "find_by_string_id"},
+        {"\\.rjs$", "categories/show.rhtml"},
+        {"^[-a-z]+://", "petstore.css"},
+        {"^[^:]+", "www.example.com"},
+        {"(=|\\?|_before_type_cast)$", "updated_on"},
+        {"^(.*?)=(.*?);", "_petstore_session_id=1b341ffe23b5298676d535fcabd3d0d7; path=/"},
+        {".*?=", "_petstore_session_id=1b341ffe23b5298676d535fcabd3d0d7; path=/"},
+        {".*_p", "_petstore_session_id=1b341ffe23b5298676d535fcabd3d0d7; path=/"},
+        {".*=", "_petstore_session_id=1b341ffe23b5298676d535fcabd3d0d7; path=/"},
+        {"a", " a"},
+    };
+
+    static Encoding encoding(String name) {
+        switch (name) {
+        case "ASCII": return ASCIIEncoding.INSTANCE;
+        case "UTF8": return UTF8Encoding.INSTANCE;
+        default: throw new IllegalArgumentException("unknown encoding: " + name);
+        }
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Patterns() {
+    }
+}
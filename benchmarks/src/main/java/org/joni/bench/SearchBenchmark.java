@@ -0,0 +1,86 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jcodings.Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19"})
+    public int pattern;
+
+    @Param({"ASCII", "UTF8"})
+    public String encoding;
+
+    private Regex regex;
+    private byte[] str;
+    private Matcher matcher;
+
+    @Setup
+    public void setup() {
+        byte[] reg = Patterns.bytes(Patterns.RAILS[pattern][0]);
+        Encoding enc = Patterns.encoding(encoding);
+        regex = new Regex(reg, 0, reg.length, Option.NONE, enc, Syntax.DEFAULT);
+        str = Patterns.bytes(Patterns.RAILS[pattern][1]);
+        matcher = regex.matcher(str);
+    }
+
+    @Benchmark
+    public int search() {
+        return regex.matcher(str, 0, str.length).search(0, str.length, Option.NONE);
+    }
+
+    @Benchmark
+    public int searchNoRegion() {
+        return regex.matcherNoRegion(str, 0, str.length).search(0, str.length, Option.NONE);
+    }
+
+    @Benchmark
+    public int searchReuse() {
+        return matcher.reset(str, 0, str.length).search(0, str.length, Option.NONE);
+    }
+
+    @Benchmark
+    public int match() {
+        return regex.matcher(str, 0, str.length).match(0, str.length, Option.NONE);
+    }
+}
@@ -32,6 +32,7 @@ import static org.joni.ast.ListNode.newAlt;
 import static org.joni.ast.ListNode.newList;
 import static org.joni.ast.QuantifierNode.isRepeatInfinite;
 
+import java.util.Arrays;
 import java.util.IllegalFormatConversionException;
 
 import org.jcodings.CaseFoldCodeItem;
@@ -147,9 +148,23 @@ final class Analyser extends Parser {
 
         if (!Config.DONT_OPTIMIZE) setOptimizedInfoFromTree(root);
 
+        regex.maxMatchLength = getMaxMatchLength(root);
+        regex.lookAroundLength = getLookAroundLength(root);
+        if (regex.lookAroundLength == MinMaxLen.INFINITE_DISTANCE) regex.maxMatchLength = MinMaxLen.INFINITE_DISTANCE;
+
+        regex.backtrackComplexity = new BacktrackAnalyser(enc).complexity(root);
+        if (Config.USE_WARNING_SUPERLINEAR_BACKTRACK && regex.backtrackComplexity != 1) {
+            syntaxWarn(regex.backtrackComplexity == Regex.COMPLEXITY_EXPONENTIAL ?
+                    "regular expression may backtrack exponentially" :
+                    "regular expression may backtrack in polynomial time of degree " + regex.backtrackComplexity);
+        }
+
         env.memNodes = null;
 
         new ArrayCompiler(this).compile(root);
+        if (Config.USE_AUTOMATON) new AutomatonCompiler(this).compile(root);
+        if (Config.USE_REVERSE_SUFFIX) setReversePrefix(root);
+        if (Config.USE_REVERSE_SEARCH && !isFindCondition(regex.options)) regex.reverse = AutomatonCompiler.reverse(this, root);
 
         if (regex.numRepeat != 0 || regex.btMemEnd != 0) {
             regex.stackPopLevel = StackPopLevel.ALL;
@@ -530,6 +545,89 @@ final class Analyser extends Parser {
         return min;
     }
 
+    /* Trying every start before the exact string when the distance to it is unbounded is quadratic. If the nodes before
+     * the string never step over its first character no match spans an earlier occurrence of it, so the starts are among
+     * the positions the reversed prefix reaches from the next occurrence, see Matcher.reverseSuffixSearch.
+     */
+    private void setReversePrefix(Node root) {
+        if (regex.exact == null || regex.isExactIgnoreCase() || regex.dMax != MinMaxLen.INFINITE_DISTANCE) return;
+        if (isFindCondition(regex.options) || !(enc.isSingleByte() || enc.isUTF8()) || root.getType() != NodeType.LIST) return;
+
+        int c = enc.mbcToCode(regex.exact, regex.exactP, regex.exactEnd);
+        for (ListNode list = (ListNode)root; list != null; list = list.tail) {
+            Node node = list.value;
+            if (node.getType() == NodeType.STR && startsWithExact((StringNode)node)) {
+                if (list != root) regex.reversePrefix = AutomatonCompiler.reversePrefix(this, (ListNode)root, node);
+                return;
+            }
+            if (mayStepOver(node, c)) return;
+        }
+    }
+
+    private boolean startsWithExact(StringNode sn) {
+        int length = regex.exactEnd - regex.exactP;
+        if (sn.isAmbig() || sn.length() < length) return false;
+        for (int i = 0; i < length; i++) {
+            if (sn.bytes[sn.p + i] != regex.exact[regex.exactP + i]) return false;
+        }
+        return true;
+    }
+
+    // whether the node might step over the character c
+    private boolean mayStepOver(Node node, int c) {
+        switch (node.getType()) {
+        case NodeType.LIST:
+        case NodeType.ALT:
+            ListNode ln = (ListNode)node;
+            do {
+                if (mayStepOver(ln.value, c)) return true;
+            } while ((ln = ln.tail) != null);
+            return false;
+
+        case NodeType.STR:
+            StringNode sn = (StringNode)node;
+            if (sn.isRaw() || sn.isAmbig()) return true;
+            for (int p = sn.p; p < sn.end; ) {
+                int len = enc.length(sn.bytes, p, sn.end);
+                if (len <= 0 || enc.mbcToCode(sn.bytes, p, sn.end) == c) return true;
+                p += len;
+            }
+            return false;
+
+        case NodeType.CCLASS:
+            return ((CClassNode)node).isCodeInCC(enc, c);
+
+        case NodeType.CTYPE:
+            CTypeNode cn = (CTypeNode)node;
+            if (cn.ctype != CharacterType.WORD) return true;
+            return cn.not != ((!cn.asciiRange || c < 0x80) && enc.isWord(c));
+
+        case NodeType.CANY:
+            return isMultiline(regex.options) || !enc.isNewLine(c);
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            return qn.upper != 0 && mayStepOver(qn.target, c);
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            if (en.isOption()) {
+                int prev = regex.options;
+                regex.options = en.option;
+                boolean may = mayStepOver(en.target, c);
+                regex.options = prev;
+                return may;
+            }
+            return en.type != EncloseType.MEMORY && en.type != EncloseType.STOP_BACKTRACK || mayStepOver(en.target, c);
+
+        case NodeType.ANCHOR:
+            return false; // look-arounds read characters without stepping over them
+
+        default:
+            return true;
+        }
+    }
+
     private int getMaxMatchLength(Node node) {
         int max = 0;
 
@@ -642,6 +740,55 @@ final class Analyser extends Parser {
         return max;
     }
 
+    // bytes read around a match by look-ahead and look-behind, INFINITE_DISTANCE for absent operators
+    private int getLookAroundLength(Node node) {
+        int len = 0;
+
+        switch (node.getType()) {
+        case NodeType.LIST:
+        case NodeType.ALT:
+            ListNode ln = (ListNode)node;
+            do {
+                int tlen = getLookAroundLength(ln.value);
+                if (len < tlen) len = tlen;
+            } while ((ln = ln.tail) != null);
+            break;
+
+        case NodeType.CALL:
+            if (Config.USE_SUBEXP_CALL) {
+                CallNode cn = (CallNode)node;
+                len = cn.isRecursion() ? MinMaxLen.INFINITE_DISTANCE : getLookAroundLength(cn.target);
+            } // USE_SUBEXP_CALL
+            break;
+
+        case NodeType.QTFR:
+            len = getLookAroundLength(((QuantifierNode)node).target);
+            break;
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            len = en.type == EncloseType.ABSENT ? MinMaxLen.INFINITE_DISTANCE : getLookAroundLength(en.target);
+            break;
+
+        case NodeType.ANCHOR:
+            AnchorNode an = (AnchorNode)node;
+            switch (an.type) {
+            case AnchorType.PREC_READ:
+            case AnchorType.PREC_READ_NOT:
+            case AnchorType.LOOK_BEHIND:
+            case AnchorType.LOOK_BEHIND_NOT:
+                len = MinMaxLen.distanceAdd(getMaxMatchLength(an.target), getLookAroundLength(an.target));
+                break;
+            } // inner switch
+            break;
+
+        default:
+            break;
+        } // switch
+
+        return len;
+    }
+
     private static final int GET_CHAR_LEN_VARLEN            = -1;
     private static final int GET_CHAR_LEN_TOP_ALT_VARLEN    = -2;
     protected final int getCharLengthTree(Node node) {
@@ -1437,6 +1584,7 @@ final class Analyser extends Parser {
                             if (y != null && isNotIncluded(x, y)) {
                                 EncloseNode en = new EncloseNode(EncloseType.STOP_BACKTRACK);
                                 en.setStopBtSimpleRepeat();
+                                en.setAutoPossessive();
                                 node.replaceWith(en);
                                 en.setTarget(node);
                             }
@@ -2366,8 +2514,70 @@ final class Analyser extends Parser {
             if (opt.length.max == 0) regex.subAnchor |= opt.anchor.rightAnchor & AnchorType.END_LINE;
         }
 
+        if (Config.USE_LITERAL_SET) setOptimizeLiteralSetInfo(node);
+
         if (Config.DEBUG_COMPILE || Config.DEBUG_MATCH) {
             Config.log.println(regex.optimizeInfoToString());
         }
     }
+
+    // searches for all strings of a leading literal alternation at once unless a string all matches contain is as long
+    private void setOptimizeLiteralSetInfo(Node node) {
+        if (!enc.isSingleByte() && !enc.isUTF8()) return;
+        while (node.getType() != NodeType.ALT) {
+            switch (node.getType()) {
+            case NodeType.LIST:
+                ListNode ln = (ListNode)node;
+                while (ln.value.getType() == NodeType.ANCHOR) { // zero width, matches still start at the strings
+                    if ((ln = ln.tail) == null) return;
+                }
+                node = ln.value;
+                break;
+
+            case NodeType.ENCLOSE:
+                EncloseNode en = (EncloseNode)node;
+                if (en.type != EncloseType.MEMORY && en.type != EncloseType.STOP_BACKTRACK && !en.isOption()) return;
+                node = en.target;
+                break;
+
+            default:
+                return;
+            }
+        }
+
+        byte[][]literals = literalAlternatives((ListNode)node);
+        if (literals == null || literals.length < Config.LITERAL_SET_MIN_LITERALS) return;
+        int minLength = Integer.MAX_VALUE;
+        for (byte[]literal : literals) minLength = Math.min(minLength, literal.length);
+        if (minLength == 0 || regex.exact != null && regex.exactEnd - regex.exactP >= minLength) return;
+
+        regex.exact = null;
+        regex.exactP = regex.exactEnd = regex.exactRare = 0;
+        regex.map = regex.mapBytes = null;
+        regex.intMap = regex.intMapBackward = null;
+        regex.backward = null;
+        regex.subAnchor = 0;
+        regex.literalSet = LiteralPrefilter.create(literals);
+        regex.forward = Search.LITERAL_SET_FORWARD;
+        regex.dMin = regex.dMax = 0;
+        regex.thresholdLength = minLength;
+    }
+
+    // the strings of an alternation whose branches are all case sensitive strings, null if there is another branch
+    static byte[][]literalAlternatives(ListNode alt) {
+        int n = 0;
+        ListNode aln = alt;
+        do {
+            if (aln.value.getType() != NodeType.STR || ((StringNode)aln.value).isAmbig()) return null;
+            n++;
+        } while ((aln = aln.tail) != null);
+
+        byte[][]literals = new byte[n][];
+        aln = alt;
+        for (int i = 0; i < n; i++, aln = aln.tail) {
+            StringNode sn = (StringNode)aln.value;
+            literals[i] = sn.length() > 0 ? Arrays.copyOfRange(sn.bytes, sn.p, sn.end) : new byte[0];
+        }
+        return literals;
+    }
 }
@@ -25,6 +25,11 @@ import static org.joni.Option.isIgnoreCase;
 import static org.joni.Option.isMultiline;
 import static org.joni.ast.QuantifierNode.isRepeatInfinite;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.jcodings.CaseFoldCodeItem;
 import org.jcodings.constants.CharacterType;
 import org.joni.ast.AnchorNode;
 import org.joni.ast.BackRefNode;
@@ -50,6 +55,21 @@ final class ArrayCompiler extends Compiler {
     private byte[][]templates;
     private int templateNum;
 
+    private int[]memoBranches;      // branches whose outcome only depends on the position, ~pc inside look-arounds
+    private int memoBranchNum;
+    private int memoDepth;          // nesting of empty checked loop bodies and counted repeat bodies
+    private int memoScopeDepth;     // nesting of look-arounds and atomic groups
+    private boolean memoizable = Config.USE_MEMOIZATION;
+
+    private int[]memoryOps;         // capture opcodes, dropped from the code run without a region
+    private int memoryOpNum;
+    private boolean captureFree = true;
+
+    private int[]altDispatch;       // tables of ALT_DISPATCH and their branch lists
+    private int altDispatchLength;
+    private int[]literalTries;
+    private int literalTriesLength;
+
     ArrayCompiler(Analyser analyser) {
         super(analyser);
     }
@@ -70,7 +90,33 @@ final class ArrayCompiler extends Compiler {
         regex.codeLength = codeLength;
         regex.templates = templates;
         regex.templateNum = templateNum;
-        regex.factory = MatcherFactory.DEFAULT;
+        if (altDispatchLength > 0) regex.altDispatch = Arrays.copyOf(altDispatch, altDispatchLength);
+        if (literalTriesLength > 0) regex.literalTries = Arrays.copyOf(literalTries, literalTriesLength);
+        regex.factory = MatcherFactory.of(regex);
+
+        if (memoizable && memoBranchNum > 0) {
+            int[]memoIndex = new int[codeLength];
+            Arrays.fill(memoIndex, -1);
+            for (int i = 0; i < memoBranchNum; i++) {
+                int pc = memoBranches[i];
+                if (pc < 0) {
+                    memoIndex[~pc] = -2 - i;
+                } else {
+                    memoIndex[pc] = i;
+                }
+            }
+            regex.memoIndex = memoIndex;
+            regex.memoRows = memoBranchNum;
+        }
+
+        if (captureFree && memoryOpNum > 0) {
+            int[]captureFreeCode = Arrays.copyOf(code, codeLength);
+            for (int i = 0; i < memoryOpNum; i++) {
+                captureFreeCode[memoryOps[i]] = OPCode.JUMP;
+                captureFreeCode[memoryOps[i] + 1] = 0;
+            }
+            regex.captureFreeCode = captureFreeCode;
+        }
 
         if (Config.USE_SUBEXP_CALL && analyser.env.unsetAddrList != null) {
             analyser.env.unsetAddrList.fix(regex);
@@ -80,6 +126,20 @@ final class ArrayCompiler extends Compiler {
 
     @Override
     protected void compileAltNode(ListNode node) {
+        byte[][]literals = trieLiterals(node);
+        if (literals != null) {
+            regex.requireStack = true;
+            addOpcode(OPCode.LITERAL_TRIE);
+            addInt(addLiteralTrie(literals));
+            return;
+        }
+
+        long[][]branches = altDispatchBranches(node);
+        if (branches != null) {
+            compileAltDispatchNode(node, branches);
+            return;
+        }
+
         ListNode aln = node;
         int len = 0;
 
@@ -107,6 +167,266 @@ final class ArrayCompiler extends Compiler {
         } while ((aln = aln.tail) != null);
     }
 
+    private byte[][]trieLiterals(ListNode node) {
+        if (!Config.USE_LITERAL_SET) return null;
+        byte[][]literals = Analyser.literalAlternatives(node);
+        return literals != null && literals.length >= Config.LITERAL_SET_MIN_LITERALS ? literals : null;
+    }
+
+    /* Nodes hold the first branch whose string ends at them or -1, their depth, the length of the last character of
+     * that string and the number of children, followed by byte and child node pairs in byte order.
+     */
+    private int addLiteralTrie(final byte[][]literals) {
+        Integer[]order = new Integer[literals.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                byte[]x = literals[a], y = literals[b];
+                for (int i = 0; i < x.length && i < y.length; i++) {
+                    if (x[i] != y[i]) return (x[i] & 0xff) - (y[i] & 0xff);
+                }
+                return x.length != y.length ? x.length - y.length : a - b;
+            }
+        });
+        return addLiteralTrieNode(literals, order, 0, order.length, 0);
+    }
+
+    private int addLiteralTrieNode(byte[][]literals, Integer[]order, int from, int to, int depth) {
+        int literal = -1;
+        if (from < to && literals[order[from]].length == depth) {
+            literal = order[from]; // duplicates are never reached
+            while (from < to && literals[order[from]].length == depth) from++;
+        }
+        int children = 0;
+        for (int i = from; i < to; children++) {
+            byte c = literals[order[i]][depth];
+            while (i < to && literals[order[i]][depth] == c) i++;
+        }
+
+        int node = literalTriesLength;
+        literalTriesLength += 4 + (children << 1);
+        if (literalTries == null) {
+            literalTries = new int[Math.max(literalTriesLength, 256)];
+        } else if (literalTriesLength > literalTries.length) {
+            literalTries = Arrays.copyOf(literalTries, Math.max(literalTriesLength, literalTries.length << 1));
+        }
+        literalTries[node] = literal;
+        literalTries[node + 1] = depth;
+        literalTries[node + 2] = literal == -1 ? 0 : lastCharLength(literals[literal]);
+        literalTries[node + 3] = children;
+
+        int pair = node + 4;
+        for (int i = from; i < to; pair += 2) {
+            byte c = literals[order[i]][depth];
+            int j = i;
+            while (j < to && literals[order[j]][depth] == c) j++;
+            int child = addLiteralTrieNode(literals, order, i, j, depth + 1);
+            literalTries[pair] = c & 0xff;
+            literalTries[pair + 1] = child;
+            i = j;
+        }
+        return node;
+    }
+
+    private int lastCharLength(byte[]literal) {
+        int p = 0, last = 0;
+        while (p < literal.length) {
+            last = p;
+            p += enc.length(literal, p, literal.length);
+        }
+        return literal.length - last;
+    }
+
+    private static final int ALT_DISPATCH_MIN_BRANCHES = 3;
+
+    // bytes each branch can start with, null for the ones that might start with any, null if too few differ
+    private long[][]altDispatchBranches(ListNode node) {
+        if (!Config.USE_ALT_DISPATCH || enc.minLength() > 1 || !enc.isAsciiCompatible()) return null;
+        int n = 0;
+        ListNode aln = node;
+        do {
+            n++;
+        } while ((aln = aln.tail) != null);
+        if (n < ALT_DISPATCH_MIN_BRANCHES) return null;
+
+        long[][]branches = new long[n][];
+        int known = 0;
+        aln = node;
+        for (int i = 0; i < n; i++, aln = aln.tail) {
+            long[]bits = new long[4];
+            if (firstBytes(aln.value, bits) == FIRST_BYTES) {
+                branches[i] = bits;
+                known++;
+            }
+        }
+        return known * 2 >= n ? branches : null;
+    }
+
+    private int compileLengthAltDispatchNode(ListNode node) {
+        int len = OPSize.ALT_DISPATCH;
+        ListNode aln = node;
+        do {
+            len += compileLengthTree(aln.value);
+            if (aln.tail != null) len += OPSize.JUMP;
+        } while ((aln = aln.tail) != null);
+        return len;
+    }
+
+    /* Branches follow the dispatch without pushes between them, the table of the byte at the position, or of the
+     * end of the string, points to a list of the branches that can match there and the instruction pushes all of
+     * them but the first, in reverse order, so they are tried in the same order as a chain of pushes would.
+     */
+    private void compileAltDispatchNode(ListNode node, long[][]branches) {
+        int n = branches.length;
+        int[]offsets = new int[n];
+        int len = 0;
+        ListNode aln = node;
+        for (int i = 0; i < n; i++, aln = aln.tail) {
+            offsets[i] = len;
+            len += compileLengthTree(aln.value);
+            if (aln.tail != null) len += OPSize.JUMP;
+        }
+
+        regex.requireStack = true;
+        addOpcode(OPCode.ALT_DISPATCH);
+        addInt(addAltDispatchTable(branches, offsets));
+
+        int pos = codeLength + len;
+        aln = node;
+        do {
+            compileTree(aln.value);
+            if (aln.tail != null) addOpcodeRelAddr(OPCode.JUMP, pos - (codeLength + OPSize.JUMP));
+        } while ((aln = aln.tail) != null);
+    }
+
+    private int addAltDispatchTable(long[][]branches, int[]offsets) {
+        int table = altDispatchLength;
+        ensureAltDispatch(table + 257);
+        altDispatchLength += 257;
+        HashMap<java.util.BitSet, Integer> lists = new HashMap<java.util.BitSet, Integer>();
+        for (int c = 0; c <= 256; c++) {
+            java.util.BitSet viable = new java.util.BitSet(); // org.joni.BitSet is fixed at 256 bits
+            for (int i = 0; i < branches.length; i++) {
+                if (branches[i] == null || c < 256 && (branches[i][c >>> 6] & (1L << c)) != 0) viable.set(i);
+            }
+            Integer list = lists.get(viable);
+            if (list == null) {
+                list = altDispatchLength;
+                lists.put(viable, list);
+                ensureAltDispatch(list + 1 + viable.cardinality());
+                altDispatch[altDispatchLength++] = viable.cardinality();
+                for (int i = viable.nextSetBit(0); i >= 0; i = viable.nextSetBit(i + 1)) altDispatch[altDispatchLength++] = offsets[i];
+            }
+            altDispatch[table + c] = list;
+        }
+        return table;
+    }
+
+    private void ensureAltDispatch(int size) {
+        if (altDispatch == null) {
+            altDispatch = new int[Math.max(size, 512)];
+        } else if (size > altDispatch.length) {
+            altDispatch = Arrays.copyOf(altDispatch, Math.max(size, altDispatch.length << 1));
+        }
+    }
+
+    private static final int FIRST_ANY = 0, FIRST_EMPTY = 1, FIRST_BYTES = 2;
+
+    /* Adds the first bytes of what the node matches to bits: FIRST_BYTES if every match starts with one of them,
+     * FIRST_EMPTY if it can also match the empty string, FIRST_ANY if matches might start with any byte.
+     * Bytes of multibyte characters are not told apart.
+     */
+    private int firstBytes(Node node, long[]bits) {
+        switch (node.getType()) {
+        case NodeType.LIST:
+            ListNode ln = (ListNode)node;
+            do {
+                int first = firstBytes(ln.value, bits);
+                if (first != FIRST_EMPTY) return first;
+            } while ((ln = ln.tail) != null);
+            return FIRST_EMPTY;
+
+        case NodeType.ALT:
+            int first = FIRST_BYTES;
+            ListNode aln = (ListNode)node;
+            do {
+                first = Math.min(first, firstBytes(aln.value, bits));
+            } while (first != FIRST_ANY && (aln = aln.tail) != null);
+            return first;
+
+        case NodeType.STR:
+            StringNode sn = (StringNode)node;
+            if (sn.length() <= 0) return FIRST_EMPTY;
+            addFirstByte(bits, sn.bytes[sn.p] & 0xff);
+            if (sn.isAmbig()) {
+                CaseFoldCodeItem[]items = enc.caseFoldCodesByString(regex.caseFoldFlag, sn.bytes, sn.p, sn.end);
+                byte[]buf = new byte[Config.ENC_CODE_TO_MBC_MAXLEN];
+                for (int i = 0; i < items.length; i++) {
+                    enc.codeToMbc(items[i].code[0], buf, 0);
+                    addFirstByte(bits, buf[0] & 0xff);
+                }
+                if (!enc.isSingleByte()) addMultiByteFirstBytes(bits);
+            }
+            return FIRST_BYTES;
+
+        case NodeType.CCLASS:
+            CClassNode cc = (CClassNode)node;
+            for (int c = 0; c < (enc.isSingleByte() ? 0x100 : 0x80); c++) {
+                if (cc.isCodeInCC(enc, c)) addFirstByte(bits, c);
+            }
+            if (!enc.isSingleByte()) addMultiByteFirstBytes(bits);
+            return FIRST_BYTES;
+
+        case NodeType.CTYPE:
+            CTypeNode cn = (CTypeNode)node;
+            if (cn.ctype != CharacterType.WORD) return FIRST_ANY;
+            for (int c = 0; c < (enc.isSingleByte() ? 0x100 : 0x80); c++) {
+                if (cn.not != ((!cn.asciiRange || c < 0x80) && enc.isWord(c))) addFirstByte(bits, c);
+            }
+            if (!enc.isSingleByte()) addMultiByteFirstBytes(bits);
+            return FIRST_BYTES;
+
+        case NodeType.CANY:
+            if (isMultiline(regex.options)) return FIRST_ANY;
+            for (int c = 0; c < (enc.isSingleByte() ? 0x100 : 0x80); c++) {
+                if (!enc.isNewLine(c)) addFirstByte(bits, c);
+            }
+            if (!enc.isSingleByte()) addMultiByteFirstBytes(bits);
+            return FIRST_BYTES;
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            if (qn.upper == 0) return FIRST_EMPTY;
+            first = firstBytes(qn.target, bits);
+            return qn.lower == 0 && first == FIRST_BYTES ? FIRST_EMPTY : first;
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            if (en.isOption()) {
+                int prev = regex.options;
+                regex.options = en.option;
+                first = firstBytes(en.target, bits);
+                regex.options = prev;
+                return first;
+            }
+            return en.type == EncloseType.MEMORY || en.type == EncloseType.STOP_BACKTRACK ? firstBytes(en.target, bits) : FIRST_ANY;
+
+        case NodeType.ANCHOR:
+            return FIRST_EMPTY;
+
+        default:
+            return FIRST_ANY;
+        }
+    }
+
+    private static void addFirstByte(long[]bits, int c) {
+        bits[c >>> 6] |= 1L << c;
+    }
+
+    private static void addMultiByteFirstBytes(long[]bits) {
+        bits[2] = bits[3] = -1L;
+    }
+
     private boolean isNeedStrLenOpExact(int op) {
         return  op == OPCode.EXACTN         ||
                 op == OPCode.EXACTMB2N      ||
@@ -1046,7 +1366,10 @@ final class ArrayCompiler extends Compiler {
         case AnchorType.BEGIN_LINE:         addOpcode(OPCode.BEGIN_LINE);           break;
         case AnchorType.END_LINE:           addOpcode(OPCode.END_LINE);             break;
         case AnchorType.SEMI_END_BUF:       addOpcode(OPCode.SEMI_END_BUF);         break;
-        case AnchorType.BEGIN_POSITION:     addOpcode(OPCode.BEGIN_POSITION);       break;
+        case AnchorType.BEGIN_POSITION:
+            addOpcode(OPCode.BEGIN_POSITION);
+            regex.beginPosition = true;
+            break;
 
         case AnchorType.WORD_BOUND:
             if (node.asciiRange) {
@@ -1148,6 +1471,13 @@ final class ArrayCompiler extends Compiler {
 
         case NodeType.ALT:
             ListNode aln = (ListNode)node;
+            if (trieLiterals(aln) != null) {
+                len = OPSize.LITERAL_TRIE;
+                break;
+            } else if (altDispatchBranches(aln) != null) {
+                len = compileLengthAltDispatchNode(aln);
+                break;
+            }
             int n = 0;
             do {
                 len += compileLengthTree(aln.value);
@@ -1258,9 +1588,127 @@ final class ArrayCompiler extends Compiler {
     }
 
     private void addOpcode(int opcode) {
+        if (memoizable) addMemoBranch(opcode);
+        if (captureFree) addMemoryOp(opcode);
         addInt(opcode);
     }
 
+    /* Without a region nothing reads what capture opcodes record unless the pattern refers back to its groups, and
+     * each of them is as long as a jump, so it can become one to the next instruction.
+     */
+    private void addMemoryOp(int opcode) {
+        switch (opcode) {
+        case OPCode.MEMORY_START:
+        case OPCode.MEMORY_START_PUSH:
+        case OPCode.MEMORY_END:
+        case OPCode.MEMORY_END_PUSH:
+            if (memoryOps == null) {
+                memoryOps = new int[8];
+            } else if (memoryOpNum == memoryOps.length) {
+                memoryOps = Arrays.copyOf(memoryOps, memoryOpNum << 1);
+            }
+            memoryOps[memoryOpNum++] = codeLength;
+            break;
+
+        case OPCode.BACKREF1:
+        case OPCode.BACKREF2:
+        case OPCode.BACKREFN:
+        case OPCode.BACKREFN_IC:
+        case OPCode.BACKREF_MULTI:
+        case OPCode.BACKREF_MULTI_IC:
+        case OPCode.BACKREF_WITH_LEVEL:
+        case OPCode.MEMORY_END_PUSH_REC:
+        case OPCode.MEMORY_END_REC:
+        case OPCode.NULL_CHECK_END_MEMST:
+        case OPCode.NULL_CHECK_END_MEMST_PUSH:
+        case OPCode.CALL:
+        case OPCode.CONDITION:
+            captureFree = false;
+            break;
+        }
+    }
+
+    /* A branch taken twice at the same position fails the second time when what follows depends on the position
+     * alone: not inside loop bodies checked for empty iterations, which compare with the position the iteration
+     * started at, not inside counted repeat bodies, which depend on the count, and not at all with back references,
+     * calls or capture aware empty checks. Inside look-arounds and atomic groups what follows the body is cut off
+     * once it succeeds, so their branches are only remembered until a body succeeds, see ByteCodeMachine.memoized.
+     */
+    private void addMemoBranch(int opcode) {
+        switch (opcode) {
+        case OPCode.PUSH:
+        case OPCode.ALT_DISPATCH:
+        case OPCode.LITERAL_TRIE:
+        case OPCode.PUSH_OR_JUMP_EXACT1:
+        case OPCode.PUSH_IF_PEEK_NEXT:
+        case OPCode.ANYCHAR_STAR:
+        case OPCode.ANYCHAR_ML_STAR:
+        case OPCode.ANYCHAR_STAR_PEEK_NEXT:
+        case OPCode.ANYCHAR_ML_STAR_PEEK_NEXT:
+            if (memoDepth > 0) break;
+            if (memoBranches == null) {
+                memoBranches = new int[8];
+            } else if (memoBranchNum == memoBranches.length) {
+                int[]tmp = new int[memoBranchNum << 1];
+                System.arraycopy(memoBranches, 0, tmp, 0, memoBranchNum);
+                memoBranches = tmp;
+            }
+            memoBranches[memoBranchNum++] = memoScopeDepth > 0 ? ~codeLength : codeLength;
+            break;
+
+        case OPCode.PUSH_POS:
+        case OPCode.PUSH_POS_NOT:
+        case OPCode.PUSH_STOP_BT:
+        case OPCode.PUSH_LOOK_BEHIND_NOT:
+            memoScopeDepth++;
+            break;
+
+        case OPCode.POP_POS:
+        case OPCode.FAIL_POS:
+        case OPCode.POP_STOP_BT:
+        case OPCode.FAIL_LOOK_BEHIND_NOT:
+            memoScopeDepth--;
+            break;
+
+        case OPCode.NULL_CHECK_START:
+        case OPCode.REPEAT:
+        case OPCode.REPEAT_NG:
+            memoDepth++;
+            break;
+
+        case OPCode.NULL_CHECK_END:
+        case OPCode.REPEAT_INC:
+        case OPCode.REPEAT_INC_NG:
+        case OPCode.REPEAT_INC_SG:
+        case OPCode.REPEAT_INC_NG_SG:
+            memoDepth--;
+            break;
+
+        case OPCode.BACKREF1:
+        case OPCode.BACKREF2:
+        case OPCode.BACKREFN:
+        case OPCode.BACKREFN_IC:
+        case OPCode.BACKREF_MULTI:
+        case OPCode.BACKREF_MULTI_IC:
+        case OPCode.BACKREF_WITH_LEVEL:
+        case OPCode.MEMORY_END_PUSH_REC:
+        case OPCode.MEMORY_END_REC:
+        case OPCode.NULL_CHECK_END_MEMST:
+        case OPCode.NULL_CHECK_END_MEMST_PUSH:
+        case OPCode.PUSH_ABSENT_POS:
+        case OPCode.CALL:
+        case OPCode.CONDITION:
+        case OPCode.STATE_CHECK_PUSH:
+        case OPCode.STATE_CHECK_PUSH_OR_JUMP:
+        case OPCode.STATE_CHECK:
+        case OPCode.STATE_CHECK_ANYCHAR_STAR:
+        case OPCode.STATE_CHECK_ANYCHAR_ML_STAR:
+        case OPCode.SET_OPTION_PUSH:
+            memoizable = false;
+            break;
+        }
+    }
+
     private void addStateCheckNum(int num) {
         addInt(num);
     }
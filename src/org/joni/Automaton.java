@@ -0,0 +1,373 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jcodings.CodeRange;
+import org.jcodings.Encoding;
+import org.jcodings.IntHolder;
+
+/**
+ * Backtracking free program built by {@link AutomatonCompiler}, executed by {@link AutomatonMachine}.
+ * Every consuming instruction steps over exactly one character, so all threads advance in lock step.
+ * Programs without assertions additionally get a lazily built DFA which is shared by all matchers.
+ */
+final class Automaton {
+    /* consuming instructions */
+    static final int CHAR               = 0;    /* CHAR length bytes... */
+    static final int CHAR_IC            = 1;    /* CHAR_IC byte remaining (one per folded pattern byte) */
+    static final int CCLASS             = 2;    /* CCLASS bitset */
+    static final int CCLASS_NOT         = 3;
+    static final int CCLASS_MB          = 4;    /* CCLASS_MB length ranges... */
+    static final int CCLASS_MB_NOT      = 5;
+    static final int CCLASS_MIX         = 6;    /* CCLASS_MIX bitset length ranges... */
+    static final int CCLASS_MIX_NOT     = 7;
+    static final int ANYCHAR            = 8;
+    static final int ANYCHAR_ML         = 9;
+    static final int WORD               = 10;
+    static final int NOT_WORD           = 11;
+    static final int ASCII_WORD         = 12;
+    static final int ASCII_NOT_WORD     = 13;
+
+    /* epsilon instructions */
+    static final int MATCH              = 14;
+    static final int JUMP               = 15;   /* JUMP addr */
+    static final int SPLIT              = 16;   /* SPLIT preferred other */
+    static final int SAVE               = 17;   /* SAVE slot */
+    static final int ASSERT             = 18;   /* ASSERT anchor-type ascii-range */
+
+    /* consume results */
+    static final int FAIL               = -1;
+    static final int BAIL               = -2;   /* the character is not something the automaton can step over, use the byte code */
+
+    final int[]code;
+    final int numSlots;
+    final Encoding enc;
+    final int caseFoldFlag;
+    final boolean reversed;     /* every position a match reaches is wanted, threads after MATCH are kept and started */
+
+    /* lazy DFA, only for programs without assertions */
+    private final ConcurrentHashMap<State, State> states;
+    private volatile boolean dfaFailed;
+    private State initial;
+
+    Automaton(Regex regex, int[]code, int numSlots) {
+        this(regex.enc, regex.caseFoldFlag, code, numSlots);
+    }
+
+    // a program from AutomatonCompiler.reverse or reversePrefix, stepped over the characters right to left by the DFA only
+    static Automaton reversed(Regex regex, int[]code) {
+        return new Automaton(regex.enc, regex.caseFoldFlag, code, 0, true);
+    }
+
+    Automaton(Encoding enc, int caseFoldFlag, int[]code, int numSlots) {
+        this(enc, caseFoldFlag, code, numSlots, false);
+    }
+
+    private Automaton(Encoding enc, int caseFoldFlag, int[]code, int numSlots, boolean reversed) {
+        this.code = code;
+        this.numSlots = numSlots;
+        this.enc = enc;
+        this.caseFoldFlag = caseFoldFlag;
+        this.reversed = reversed;
+        states = hasAssertions() ? null : new ConcurrentHashMap<State, State>();
+    }
+
+    final boolean hasAssertions() {
+        for (int pc = 0; pc < code.length; pc = next(pc)) {
+            if (code[pc] == ASSERT) return true;
+        }
+        return false;
+    }
+
+    // address of the instruction following pc
+    final int next(int pc) {
+        switch (code[pc]) {
+        case CHAR:              return pc + 2 + code[pc + 1];
+        case CHAR_IC:           return pc + 3;
+        case CCLASS:
+        case CCLASS_NOT:        return pc + 1 + BitSet.BITSET_SIZE;
+        case CCLASS_MB:
+        case CCLASS_MB_NOT:     return pc + 2 + code[pc + 1];
+        case CCLASS_MIX:
+        case CCLASS_MIX_NOT:    return pc + 2 + BitSet.BITSET_SIZE + code[pc + 1 + BitSet.BITSET_SIZE];
+        case JUMP:
+        case SAVE:              return pc + 2;
+        case SPLIT:
+        case ASSERT:            return pc + 3;
+        default:                return pc + 1;
+        }
+    }
+
+    private boolean isInBitSet(int p, byte b) {
+        int c = b & 0xff;
+        return (code[p + (c >>> BitSet.ROOM_SHIFT)] & (1 << c)) != 0;
+    }
+
+    private static int stepped(int next, int length, int n) {
+        return length == n ? next : BAIL;
+    }
+
+    // same semantics as the corresponding ByteCodeMachine ops, n is the length of the character at s
+    final int consume(int pc, byte[]bytes, int s, int n, int range, int end, IntHolder holder, byte[]buf) {
+        if (s >= range) return FAIL;
+        final int[]code = this.code;
+        int len;
+        switch (code[pc]) {
+        case CHAR:
+            len = code[pc + 1];
+            if (code[pc + 2] != bytes[s]) return FAIL;
+            if (len != n) return BAIL;
+            if (s + len > range) return FAIL;
+            for (int i = 1; i < len; i++) {
+                if (code[pc + 2 + i] != bytes[s + i]) return FAIL;
+            }
+            return pc + 2 + len;
+
+        case CHAR_IC:
+            byte[]table = enc.toLowerCaseTable();
+            if (table != null) {
+                if (n != 1) return BAIL;
+                return code[pc + 1] == table[bytes[s] & 0xff] ? pc + 3 : FAIL;
+            }
+            holder.value = s;
+            len = enc.mbcCaseFold(caseFoldFlag, bytes, holder, end, buf);
+            if (holder.value - s != n) return BAIL;
+            if (holder.value > range || len > code[pc + 2]) return FAIL;
+            for (int i = 0; i < len; i++) {
+                if (code[pc + 1 + 3 * i] != buf[i]) return FAIL;
+            }
+            return pc + 3 * len;
+
+        case CCLASS:
+            if (!isInBitSet(pc + 1, bytes[s])) return FAIL;
+            return stepped(pc + 1 + BitSet.BITSET_SIZE, clamp(bytes, s, end), n);
+
+        case CCLASS_NOT:
+            if (isInBitSet(pc + 1, bytes[s])) return FAIL;
+            return stepped(pc + 1 + BitSet.BITSET_SIZE, clamp(bytes, s, end), n);
+
+        case CCLASS_MB:
+            if (!enc.isMbcHead(bytes, s, end)) return FAIL;
+            return inClassMB(pc + 1, bytes, s, n, range, end);
+
+        case CCLASS_MB_NOT:
+            if (!enc.isMbcHead(bytes, s, end)) return stepped(pc + 2 + code[pc + 1], 1, n);
+            return notInClassMB(pc + 1, bytes, s, n, range, end);
+
+        case CCLASS_MIX:
+            if (enc.isMbcHead(bytes, s, end)) return inClassMB(pc + 1 + BitSet.BITSET_SIZE, bytes, s, n, range, end);
+            if (!isInBitSet(pc + 1, bytes[s])) return FAIL;
+            return stepped(next(pc), 1, n);
+
+        case CCLASS_MIX_NOT:
+            if (enc.isMbcHead(bytes, s, end)) return notInClassMB(pc + 1 + BitSet.BITSET_SIZE, bytes, s, n, range, end);
+            if (isInBitSet(pc + 1, bytes[s])) return FAIL;
+            return stepped(next(pc), 1, n);
+
+        case ANYCHAR:
+            len = enc.length(bytes, s, end);
+            if (s + len > range || enc.isNewLine(bytes, s, end)) return FAIL;
+            return stepped(pc + 1, len, n);
+
+        case ANYCHAR_ML:
+            len = enc.length(bytes, s, end);
+            if (s + len > range) return FAIL;
+            return stepped(pc + 1, len, n);
+
+        case WORD:
+            if (!enc.isMbcWord(bytes, s, end)) return FAIL;
+            return stepped(pc + 1, enc.length(bytes, s, end), n);
+
+        case NOT_WORD:
+            if (enc.isMbcWord(bytes, s, end)) return FAIL;
+            return stepped(pc + 1, enc.length(bytes, s, end), n);
+
+        case ASCII_WORD:
+            if (!Matcher.isMbcAsciiWord(enc, bytes, s, end)) return FAIL;
+            return stepped(pc + 1, enc.length(bytes, s, end), n);
+
+        case ASCII_NOT_WORD:
+            if (Matcher.isMbcAsciiWord(enc, bytes, s, end)) return FAIL;
+            return stepped(pc + 1, enc.length(bytes, s, end), n);
+
+        default:
+            return FAIL;
+        }
+    }
+
+    private int clamp(byte[]bytes, int s, int end) {
+        int len = enc.length(bytes, s, end);
+        return s + len > end ? end - s : len;
+    }
+
+    private int inClassMB(int p, byte[]bytes, int s, int n, int range, int end) {
+        int len = enc.length(bytes, s, end);
+        if (s + len > range) return FAIL;
+        if (!CodeRange.isInCodeRange(code, p + 1, enc.mbcToCode(bytes, s, s + len))) return FAIL;
+        return stepped(p + 1 + code[p], len, n);
+    }
+
+    private int notInClassMB(int p, byte[]bytes, int s, int n, int range, int end) {
+        int len = enc.length(bytes, s, end);
+        if (s + len > range) return stepped(p + 1 + code[p], end - s, n);
+        if (CodeRange.isInCodeRange(code, p + 1, enc.mbcToCode(bytes, s, s + len))) return FAIL;
+        return stepped(p + 1 + code[p], len, n);
+    }
+
+    /* lazy DFA: a state is the priority ordered list of threads (consuming or MATCH instructions) alive at a position */
+    static final class State {
+        final int[]pcs;
+        final boolean match;
+        final State[]next = new State[512]; /* [0..255] while threads may still start, [256..511] after that */
+        private volatile MbTable<State> mbNext; /* transitions over multibyte characters */
+        private final int hash;
+
+        State(int[]pcs, boolean match) {
+            this.pcs = pcs;
+            this.match = match;
+            this.hash = Arrays.hashCode(pcs);
+        }
+
+        State mbNext(int key) {
+            MbTable<State> table = mbNext;
+            return table == null ? null : table.get(key);
+        }
+
+        synchronized void mbPut(int key, State st) {
+            MbTable<State> table = mbNext;
+            mbNext = (table == null ? new MbTable<State>(16) : table).put(key, st);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof State && Arrays.equals(pcs, ((State)other).pcs);
+        }
+    }
+
+    final boolean hasDfa() {
+        return states != null && !dfaFailed;
+    }
+
+    final State initialState() {
+        State st = initial;
+        if (st == null) {
+            int[]list = new int[code.length];
+            int size = closure(list, 0, new boolean[code.length], new int[code.length << 1], 0);
+            initial = st = intern(list, size);
+        }
+        return st;
+    }
+
+    // state after stepping over the character at s (n bytes long), null if the DFA cannot be used
+    final State step(State st, byte[]bytes, int s, int n, int range, int end, boolean start) {
+        boolean cacheable = range == end && s + n <= end;
+        int index = (bytes[s] & 0xff) | (start ? 0 : 256);
+        int key = 0;
+        if (cacheable) {
+            State next;
+            if (n == 1) {
+                next = st.next[index];
+            } else {
+                key = MbTable.key(bytes, s, n, start);
+                next = key == 0 ? null : st.mbNext(key);
+            }
+            if (next != null) return next;
+        }
+
+        int[]list = new int[code.length];
+        boolean[]seen = new boolean[code.length];
+        int[]stack = new int[code.length << 1];
+        IntHolder holder = new IntHolder();
+        byte[]buf = new byte[Config.ENC_MBC_CASE_FOLD_MAXLEN];
+        int size = 0;
+        for (int pc : st.pcs) {
+            if (code[pc] == MATCH) {
+                if (reversed) continue;
+                break;
+            }
+            int next = consume(pc, bytes, s, n, range, end, holder, buf);
+            if (next == BAIL) return null;
+            if (next != FAIL) size = closure(list, size, seen, stack, next);
+        }
+        if (start && (reversed || !st.match)) size = closure(list, size, seen, stack, 0);
+
+        State next = intern(list, size);
+        if (next == null) return null;
+        if (cacheable) {
+            if (n == 1) {
+                st.next[index] = next;
+            } else if (key != 0) {
+                st.mbPut(key, next);
+            }
+        }
+        return next;
+    }
+
+    private State intern(int[]list, int size) {
+        boolean match = false;
+        for (int i = 0; i < size; i++) {
+            if (code[list[i]] == MATCH) match = true;
+        }
+        State st = new State(Arrays.copyOf(list, size), match);
+        State prev = states.putIfAbsent(st, st);
+        if (prev != null) return prev;
+        if (states.size() > Config.AUTOMATON_MAX_DFA_STATES) {
+            dfaFailed = true;
+            states.clear();
+            return null;
+        }
+        return st;
+    }
+
+    // appends the threads reachable from pc without consuming input, SAVEs are irrelevant for the DFA
+    private int closure(int[]list, int size, boolean[]seen, int[]stack, int pc) {
+        int sp = 0;
+        stack[sp++] = pc;
+        while (sp > 0) {
+            pc = stack[--sp];
+            while (!seen[pc]) {
+                seen[pc] = true;
+                switch (code[pc]) {
+                case JUMP:
+                    pc = code[pc + 1];
+                    continue;
+                case SPLIT:
+                    stack[sp++] = code[pc + 2];
+                    pc = code[pc + 1];
+                    continue;
+                case SAVE:
+                    pc += 2;
+                    continue;
+                default:
+                    list[size++] = pc;
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import static org.joni.Option.isFindCondition;
+import static org.joni.Option.isMultiline;
+import static org.joni.ast.QuantifierNode.isRepeatInfinite;
+
+import java.util.Arrays;
+
+import org.jcodings.constants.CharacterType;
+import org.joni.ast.AnchorNode;
+import org.joni.ast.BackRefNode;
+import org.joni.ast.CClassNode;
+import org.joni.ast.CTypeNode;
+import org.joni.ast.CallNode;
+import org.joni.ast.EncloseNode;
+import org.joni.ast.ListNode;
+import org.joni.ast.Node;
+import org.joni.ast.QuantifierNode;
+import org.joni.ast.StringNode;
+import org.joni.constants.internal.AnchorType;
+import org.joni.constants.internal.EncloseType;
+import org.joni.constants.internal.TargetInfo;
+
+/**
+ * Compiles the analysed node tree into an {@link Automaton} program.
+ * Patterns using features an automaton cannot express (backreferences, calls,
+ * look-around, atomic groups, absent operators, conditionals, \K) are left to the byte code machine.
+ * Reversed programs step over the characters from right to left and only have to accept a superset of
+ * what the nodes match, so they drop captures, assertions and atomicity.
+ */
+final class AutomatonCompiler extends Compiler {
+    private int[]code;
+    private int codeLength;
+    private boolean unsupported;
+    private final boolean reverse;
+
+    AutomatonCompiler(Analyser analyser) {
+        this(analyser, false);
+    }
+
+    private AutomatonCompiler(Analyser analyser, boolean reverse) {
+        super(analyser);
+        this.reverse = reverse;
+    }
+
+    // program run backwards from the end of what node matches, null unless the DFA can run it
+    static Automaton reverse(Analyser analyser, Node node) {
+        AutomatonCompiler compiler = new AutomatonCompiler(analyser, true);
+        compiler.code = new int[64];
+        compiler.compileTree(node);
+        return compiler.reversed();
+    }
+
+    // program run backwards from the end of what the nodes of list up to stop match, null unless the DFA can run it
+    static Automaton reversePrefix(Analyser analyser, ListNode list, Node stop) {
+        AutomatonCompiler compiler = new AutomatonCompiler(analyser, true);
+        compiler.code = new int[64];
+        compiler.compileReversed(list, stop);
+        return compiler.reversed();
+    }
+
+    private Automaton reversed() {
+        add(Automaton.MATCH);
+        if (tooLarge()) return null;
+        Automaton automaton = Automaton.reversed(regex, Arrays.copyOf(code, codeLength));
+        return automaton.hasDfa() ? automaton : null;
+    }
+
+    @Override
+    protected void prepare() {
+        code = new int[64];
+        codeLength = 0;
+        unsupported = isFindCondition(regex.options) || (Config.USE_CAPTURE_HISTORY && regex.captureHistory != 0);
+        addSave(0);
+    }
+
+    @Override
+    protected void finish() {
+        addSave(1);
+        add(Automaton.MATCH);
+        if (unsupported || codeLength > Config.AUTOMATON_MAX_SIZE) return;
+
+        int[]program = new int[codeLength];
+        System.arraycopy(code, 0, program, 0, codeLength);
+        regex.automaton = new Automaton(regex, program, (regex.numMem + 1) << 1);
+        // the program of stackless byte code is still used by RegexSet
+        regex.factory = MatcherFactory.of(regex);
+    }
+
+    private void ensure(int size) {
+        if (codeLength + size > code.length) {
+            int[]tmp = new int[Math.max(code.length << 1, codeLength + size)];
+            System.arraycopy(code, 0, tmp, 0, codeLength);
+            code = tmp;
+        }
+    }
+
+    private void add(int i) {
+        ensure(1);
+        code[codeLength++] = i;
+    }
+
+    private void addInts(int[]ints, int length) {
+        ensure(length);
+        System.arraycopy(ints, 0, code, codeLength, length);
+        codeLength += length;
+    }
+
+    private void addSave(int slot) {
+        add(Automaton.SAVE);
+        add(slot);
+    }
+
+    private int addSplit(int preferred, int other) {
+        int pc = codeLength;
+        add(Automaton.SPLIT);
+        add(preferred);
+        add(other);
+        return pc;
+    }
+
+    private int addJump(int to) {
+        int pc = codeLength;
+        add(Automaton.JUMP);
+        add(to);
+        return pc;
+    }
+
+    // stop emitting once the program is known to be useless
+    private boolean tooLarge() {
+        return unsupported || codeLength > Config.AUTOMATON_MAX_SIZE;
+    }
+
+    private void compileReversed(ListNode list, Node stop) {
+        int n = 0;
+        for (ListNode ln = list; ln != null && ln.value != stop; ln = ln.tail) n++;
+        Node[]nodes = new Node[n];
+        for (int i = 0; i < n; i++, list = list.tail) nodes[i] = list.value;
+        for (int i = n - 1; i >= 0 && !tooLarge(); i--) compileTree(nodes[i]);
+    }
+
+    @Override
+    protected void compileListNode(ListNode node) {
+        if (reverse) {
+            compileReversed(node, null);
+        } else {
+            super.compileListNode(node);
+        }
+    }
+
+    @Override
+    protected void compileAltNode(ListNode node) {
+        int[]jumps = new int[4];
+        int n = 0;
+        do {
+            if (node.tail != null) {
+                int split = addSplit(codeLength + 3, 0);
+                compileTree(node.value);
+                if (n == jumps.length) {
+                    int[]tmp = new int[n << 1];
+                    System.arraycopy(jumps, 0, tmp, 0, n);
+                    jumps = tmp;
+                }
+                jumps[n++] = addJump(0);
+                code[split + 2] = codeLength;
+            } else {
+                compileTree(node.value);
+            }
+        } while ((node = node.tail) != null && !tooLarge());
+
+        for (int i = 0; i < n; i++) code[jumps[i] + 1] = codeLength;
+    }
+
+    @Override
+    protected void compileStringNode(StringNode node) {
+        if (!reverse) {
+            super.compileStringNode(node);
+        } else if (node.isAmbig()) {
+            unsupported = true;
+        } else if (node.length() > 0) {
+            addCompileString(node.bytes, node.p, 1, node.length(), false);
+        }
+    }
+
+    @Override
+    protected void addCompileString(byte[]bytes, int p, int mbLength, int byteLength, boolean ignoreCase) {
+        int end = p + byteLength;
+        if (reverse) {
+            int[]chars = new int[byteLength];
+            int n = 0;
+            for (int q = p; q < end; q += chars[n++]) {
+                int len = enc.length(bytes, q, end);
+                chars[n] = len <= 0 || q + len > end ? 1 : len;
+            }
+            for (int q = end; n > 0; ) {
+                int len = chars[--n];
+                q -= len;
+                add(Automaton.CHAR);
+                add(len);
+                ensure(len);
+                for (int i = 0; i < len; i++) code[codeLength++] = bytes[q + i];
+            }
+        } else if (ignoreCase) {
+            for (int i = p; i < end; i++) {
+                add(Automaton.CHAR_IC);
+                add(bytes[i]);
+                add(end - i);
+            }
+        } else {
+            while (p < end) {
+                int len = enc.length(bytes, p, end);
+                if (len <= 0 || p + len > end) len = 1;
+                add(Automaton.CHAR);
+                add(len);
+                ensure(len);
+                for (int i = 0; i < len; i++) code[codeLength++] = bytes[p++];
+            }
+        }
+    }
+
+    @Override
+    protected void compileCClassNode(CClassNode cc) {
+        if (cc.mbuf == null) {
+            add(cc.isNot() ? Automaton.CCLASS_NOT : Automaton.CCLASS);
+            addInts(cc.bs.bits, BitSet.BITSET_SIZE);
+        } else {
+            if (enc.minLength() > 1 || cc.bs.isEmpty()) {
+                add(cc.isNot() ? Automaton.CCLASS_MB_NOT : Automaton.CCLASS_MB);
+            } else {
+                add(cc.isNot() ? Automaton.CCLASS_MIX_NOT : Automaton.CCLASS_MIX);
+                addInts(cc.bs.bits, BitSet.BITSET_SIZE);
+            }
+            add(cc.mbuf.getUsed());
+            addInts(cc.mbuf.getCodeRange(), cc.mbuf.getUsed());
+        }
+    }
+
+    @Override
+    protected void compileCTypeNode(CTypeNode node) {
+        if (node.ctype != CharacterType.WORD) newInternalException(PARSER_BUG);
+        if (node.not) {
+            add(node.asciiRange ? Automaton.ASCII_NOT_WORD : Automaton.NOT_WORD);
+        } else {
+            add(node.asciiRange ? Automaton.ASCII_WORD : Automaton.WORD);
+        }
+    }
+
+    @Override
+    protected void compileAnyCharNode() {
+        add(isMultiline(regex.options) ? Automaton.ANYCHAR_ML : Automaton.ANYCHAR);
+    }
+
+    @Override
+    protected void compileCallNode(CallNode node) {
+        unsupported = true;
+    }
+
+    @Override
+    protected void compileBackrefNode(BackRefNode node) {
+        unsupported = true;
+    }
+
+    @Override
+    protected void compileCECQuantifierNode(QuantifierNode node) {
+        compileNonCECQuantifierNode(node);
+    }
+
+    @Override
+    protected void compileNonCECQuantifierNode(QuantifierNode qn) {
+        boolean infinite = isRepeatInfinite(qn.upper);
+        // an empty iteration has to be cut off the way NULL_CHECK does, leave those to the byte code machine
+        if (!reverse && qn.targetEmptyInfo != TargetInfo.ISNOT_EMPTY && (infinite || qn.upper > 1)) {
+            unsupported = true;
+            return;
+        }
+
+        for (int i = 0; i < qn.lower && !tooLarge(); i++) compileTree(qn.target);
+
+        if (infinite) {
+            int split = addSplit(0, 0);
+            compileTree(qn.target);
+            addJump(split);
+            code[split + (qn.greedy ? 1 : 2)] = split + 3;
+            code[split + (qn.greedy ? 2 : 1)] = codeLength;
+        } else {
+            int n = qn.upper - qn.lower;
+            int[]splits = new int[n];
+            for (int i = 0; i < n && !tooLarge(); i++) {
+                splits[i] = addSplit(0, 0);
+                compileTree(qn.target);
+            }
+            for (int i = 0; i < n; i++) {
+                code[splits[i] + (qn.greedy ? 1 : 2)] = splits[i] + 3;
+                code[splits[i] + (qn.greedy ? 2 : 1)] = codeLength;
+            }
+        }
+    }
+
+    @Override
+    protected void compileOptionNode(EncloseNode node) {
+        int prev = regex.options;
+        regex.options = node.option;
+        compileTree(node.target);
+        regex.options = prev;
+    }
+
+    @Override
+    protected void compileEncloseNode(EncloseNode node) {
+        switch (node.type) {
+        case EncloseType.MEMORY:
+            if (Config.USE_SUBEXP_CALL && node.isCalled()) {
+                unsupported = true;
+                return;
+            }
+            if (reverse) {
+                compileTree(node.target);
+                break;
+            }
+            addSave(node.regNum << 1);
+            compileTree(node.target);
+            addSave((node.regNum << 1) + 1);
+            break;
+
+        case EncloseType.STOP_BACKTRACK:
+            // automatic possessification only where backtracking into the repeat could never succeed
+            if (node.isAutoPossessive() || reverse) {
+                compileTree(node.target);
+            } else {
+                unsupported = true;
+            }
+            break;
+
+        default:
+            unsupported = true;
+        }
+    }
+
+    @Override
+    protected void compileAnchorNode(AnchorNode node) {
+        if (reverse) return;
+        switch (node.type) {
+        case AnchorType.BEGIN_BUF:
+        case AnchorType.END_BUF:
+        case AnchorType.BEGIN_LINE:
+        case AnchorType.END_LINE:
+        case AnchorType.SEMI_END_BUF:
+        case AnchorType.BEGIN_POSITION:
+        case AnchorType.WORD_BOUND:
+        case AnchorType.NOT_WORD_BOUND:
+            break;
+
+        case AnchorType.WORD_BEGIN:
+        case AnchorType.WORD_END:
+            if (!Config.USE_WORD_BEGIN_END) return;
+            break;
+
+        default:
+            unsupported = true;
+            return;
+        }
+        add(Automaton.ASSERT);
+        add(node.type);
+        add(node.asciiRange ? 1 : 0);
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import static org.joni.Option.isNotBol;
+import static org.joni.Option.isNotEol;
+
+import java.util.Arrays;
+
+import org.joni.constants.internal.AnchorType;
+
+/**
+ * Runs an {@link Automaton} as a Pike VM: all threads advance one character at a time in priority order,
+ * which gives the same leftmost first result as backtracking in time linear in the subject length.
+ * Anything the automaton cannot step over (malformed characters, non 7 bit bytes under CR_7_BIT) is handed back to the byte code.
+ */
+final class AutomatonMachine extends ByteCodeMachine {
+    static final MatcherFactory FACTORY = new MatcherFactory() {
+        @Override
+        Matcher create(Regex regex, Region region, byte[]bytes, int p, int end) {
+            return new AutomatonMachine(regex, region, bytes, p, end);
+        }
+    };
+
+    private static final int NOT_FOUND = -1;
+    private static final int FOUND = 0;
+
+    private final Automaton automaton;
+    private final int[]code;
+    private final int numSlots;
+
+    private int[]clist, nlist;          // thread instructions
+    private int[]ccaps, ncaps;          // thread capture slots, numSlots per thread
+    private int csize, nsize;
+    private int[]seen;                  // generation an instruction was last added at
+    private int gen;
+    private int[]stack;
+    private int[]caps;
+    private int[]matchCaps;
+    private int range;                  // right range for assertions
+
+    AutomatonMachine(Regex regex, Region region, byte[]bytes, int p, int end) {
+        super(regex, region, bytes, p, end);
+        automaton = regex.automaton;
+        code = automaton.code;
+        numSlots = automaton.numSlots;
+    }
+
+    private void ensureLists() {
+        if (clist == null) {
+            int length = code.length;
+            clist = new int[length];
+            nlist = new int[length];
+            ccaps = new int[length * numSlots];
+            ncaps = new int[length * numSlots];
+            seen = new int[length];
+            stack = new int[(length << 1) + 2];
+            caps = new int[numSlots];
+            matchCaps = new int[numSlots];
+        }
+    }
+
+    @Override
+    boolean isOnePass() {
+        return true;
+    }
+
+    @Override
+    protected int matchAt(int range, int sstart, int sprev, boolean interrupt) throws InterruptedException {
+        int r = pike(sstart, sprev, sstart, range, interrupt);
+        if (r == Automaton.BAIL) return super.matchAt(range, sstart, sprev, interrupt);
+        return r == FAILED ? FAILED : matchCaps[1] - sstart;
+    }
+
+    @Override
+    int scanForward(int upperRange, int s, int prev, int range, boolean interrupt) throws InterruptedException {
+        int matchRange = Config.USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE ? upperRange : end;
+        if (automaton.hasDfa()) {
+            int r = dfa(s, range, matchRange, interrupt);
+            if (r == NOT_FOUND) return FAILED;
+            if (r == Automaton.BAIL) return super.scanForward(upperRange, s, prev, range, interrupt);
+        }
+        int r = pike(s, prev, range, matchRange, interrupt);
+        return r == Automaton.BAIL ? super.scanForward(upperRange, s, prev, range, interrupt) : r;
+    }
+
+    // length of the character at s, BAIL when the automaton cannot step over it
+    private int charLength(int s) {
+        if (enc.isSingleByte()) return 1;
+        if ((msaOptions & Option.CR_7_BIT) != 0) return bytes[s] < 0 ? Automaton.BAIL : 1;
+        int n = enc.length(bytes, s, end);
+        return n <= 0 || s + n > end ? Automaton.BAIL : n;
+    }
+
+    // whether any match starts at s..limit, BAIL if the DFA could not answer
+    private int dfa(int s, int limit, int range, boolean interrupt) throws InterruptedException {
+        Automaton.State st = automaton.initialState();
+        if (st == null) return FOUND;
+        int interruptCheckCounter = 0;
+        while (!st.match) {
+            if (s >= end) return NOT_FOUND;
+            if (interruptCheckCounter++ >= interruptCheckEvery) {
+                if (timeout != -1) handleTimeout();
+                handleInterrupted(interrupt);
+                interruptCheckCounter = 0;
+            }
+            int n = charLength(s);
+            if (n == Automaton.BAIL) return Automaton.BAIL;
+            boolean start = s + n <= limit;
+            st = automaton.step(st, bytes, s, n, range, end, start);
+            if (st == null) return FOUND;
+            if (st.pcs.length == 0 && !start) return NOT_FOUND;
+            s += n;
+        }
+        return FOUND;
+    }
+
+    // returns the start of the leftmost first match of the threads started at s..limit, FAILED or BAIL
+    private int pike(int s, int sprev, int limit, int range, boolean interrupt) throws InterruptedException {
+        ensureLists();
+        this.range = range;
+        boolean matched = false;
+        int interruptCheckCounter = 0;
+
+        nextGeneration();
+        nsize = 0;
+        Arrays.fill(caps, Region.REGION_NOTPOS);
+        addThread(0, s, sprev);
+        swap();
+
+        while (csize > 0 || (!matched && s < limit)) {
+            if (interruptCheckCounter++ >= interruptCheckEvery) {
+                if (timeout != -1) handleTimeout();
+                handleInterrupted(interrupt);
+                interruptCheckCounter = 0;
+            }
+
+            int n = 0;
+            if (s < end) {
+                n = charLength(s);
+                if (n == Automaton.BAIL) return Automaton.BAIL;
+            }
+            int q = s + n;
+
+            nextGeneration();
+            nsize = 0;
+            for (int i = 0; i < csize; i++) {
+                int pc = clist[i];
+                if (code[pc] == Automaton.MATCH) {
+                    System.arraycopy(ccaps, i * numSlots, matchCaps, 0, numSlots);
+                    matched = true;
+                    break; // lower priority threads are cut off
+                }
+                if (n == 0) continue;
+                int next = automaton.consume(pc, bytes, s, n, range, end, this, cfbuf());
+                if (next == Automaton.BAIL) return Automaton.BAIL;
+                if (next != Automaton.FAIL) {
+                    System.arraycopy(ccaps, i * numSlots, caps, 0, numSlots);
+                    addThread(next, q, s);
+                }
+            }
+            if (n == 0) break;
+
+            if (!matched && q <= limit) {
+                int prev = s;
+                if (nsize == 0 && q < limit) { // nothing alive, let the optimizer find the next start
+                    int c = forwardCandidate(q, limit);
+                    if (c == FAILED) break;
+                    if (c != q) {
+                        q = c;
+                        prev = value;
+                    }
+                }
+                Arrays.fill(caps, Region.REGION_NOTPOS);
+                addThread(0, q, prev);
+            }
+            swap();
+            s = q;
+        }
+
+        if (!matched) return FAILED;
+        setRegion();
+        return matchCaps[0];
+    }
+
+    private void setRegion() {
+        final Region region = msaRegion;
+        if (region != null) {
+            region.setBeg(0, msaBegin = matchCaps[0] - str);
+            region.setEnd(0, msaEnd   = matchCaps[1] - str);
+            for (int i = 1; i <= regex.numMem; i++) {
+                int me = matchCaps[(i << 1) + 1];
+                if (me != Region.REGION_NOTPOS) {
+                    region.setBeg(i, matchCaps[i << 1] - str);
+                    region.setEnd(i, me - str);
+                } else {
+                    region.setBeg(i, Region.REGION_NOTPOS);
+                    region.setEnd(i, Region.REGION_NOTPOS);
+                }
+            }
+        } else {
+            msaBegin = msaMatchStart = matchCaps[0] - str;
+            msaEnd   = matchCaps[1] - str;
+        }
+    }
+
+    private void nextGeneration() {
+        if (++gen == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            gen = 1;
+        }
+    }
+
+    private void swap() {
+        int[]tmp = clist; clist = nlist; nlist = tmp;
+        tmp = ccaps; ccaps = ncaps; ncaps = tmp;
+        csize = nsize;
+    }
+
+    // follows epsilon instructions from pc at s with the captures in caps, appends threads to the next list
+    private void addThread(int pc, int s, int sprev) {
+        final int[]code = this.code;
+        final int[]stack = this.stack;
+        final int[]caps = this.caps;
+        int sp = 0;
+        stack[sp++] = pc;
+        while (sp > 0) {
+            pc = stack[--sp];
+            if (pc < 0) { // restore a capture slot
+                caps[-pc - 1] = stack[--sp];
+                continue;
+            }
+            while (seen[pc] != gen) {
+                seen[pc] = gen;
+                switch (code[pc]) {
+                case Automaton.JUMP:
+                    pc = code[pc + 1];
+                    continue;
+                case Automaton.SPLIT:
+                    stack[sp++] = code[pc + 2];
+                    pc = code[pc + 1];
+                    continue;
+                case Automaton.SAVE:
+                    int slot = code[pc + 1];
+                    stack[sp++] = caps[slot];
+                    stack[sp++] = -slot - 1;
+                    caps[slot] = s;
+                    pc += 2;
+                    continue;
+                case Automaton.ASSERT:
+                    if (isAssertion(code[pc + 1], code[pc + 2] != 0, s, sprev)) pc += 3;
+                    continue;
+                default:
+                    nlist[nsize] = pc;
+                    System.arraycopy(caps, 0, ncaps, nsize * numSlots, numSlots);
+                    nsize++;
+                }
+            }
+        }
+    }
+
+    private boolean isWord(int p, boolean ascii) {
+        return ascii ? isMbcAsciiWord(enc, bytes, p, end) : enc.isMbcWord(bytes, p, end);
+    }
+
+    // same semantics as the corresponding ByteCodeMachine ops
+    private boolean isAssertion(int type, boolean ascii, int s, int sprev) {
+        switch (type) {
+        case AnchorType.BEGIN_BUF:
+            return s == str;
+
+        case AnchorType.END_BUF:
+            return s == end;
+
+        case AnchorType.BEGIN_POSITION:
+            return s == msaGpos;
+
+        case AnchorType.BEGIN_LINE:
+            if (s == str) return !isNotBol(msaOptions);
+            return enc.isNewLine(bytes, sprev, end) && s != end;
+
+        case AnchorType.END_LINE:
+            if (s == end) return endOfString(sprev);
+            return enc.isNewLine(bytes, s, end) || (Config.USE_CRNL_AS_LINE_TERMINATOR && enc.isMbcCrnl(bytes, s, end));
+
+        case AnchorType.SEMI_END_BUF:
+            if (s == end) return endOfString(sprev);
+            if (enc.isNewLine(bytes, s, end) && s + enc.length(bytes, s, end) == end) return true;
+            if (Config.USE_CRNL_AS_LINE_TERMINATOR && enc.isMbcCrnl(bytes, s, end)) {
+                int ss = s + enc.length(bytes, s, end);
+                ss += enc.length(bytes, ss, end);
+                return ss == end;
+            }
+            return false;
+
+        case AnchorType.WORD_BOUND:
+            if (s == str) return s < range && isWord(s, ascii);
+            if (s == end) return sprev < end && isWord(sprev, ascii);
+            return isWord(s, ascii) != isWord(sprev, ascii);
+
+        case AnchorType.NOT_WORD_BOUND:
+            if (s == str) return !(s < range && isWord(s, ascii));
+            if (s == end) return !(sprev < end && isWord(sprev, ascii));
+            return isWord(s, ascii) == isWord(sprev, ascii);
+
+        case AnchorType.WORD_BEGIN:
+            return s < range && isWord(s, ascii) && (s == str || !isWord(sprev, ascii));
+
+        case AnchorType.WORD_END:
+            return s != str && isWord(sprev, ascii) && (s == end || !isWord(s, ascii));
+
+        default:
+            return false;
+        }
+    }
+
+    private boolean endOfString(int sprev) {
+        if (Config.USE_NEWLINE_AT_END_OF_STRING_HAS_EMPTY_LINE) {
+            if (str == end || !enc.isNewLine(bytes, sprev, end)) return !isNotEol(msaOptions);
+            return true;
+        }
+        return !isNotEol(msaOptions);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jcodings.Encoding;
+import org.jcodings.IntHolder;
+
+/**
+ * Union of the assertion free automata of a {@link RegexSet}, run as a lazily built DFA over all of them at once.
+ * Unlike the DFA of a single {@link Automaton} no thread is ever cut off by a higher priority match,
+ * a state only records which members reached their MATCH instruction. Since every member may start
+ * at every position the threads of the start closure are implied and left out of the states.
+ */
+final class AutomatonSet {
+    private final Automaton automaton;  // member programs laid out one after another
+    private final int[]memberOf;        // member index of MATCH instructions, -1 elsewhere
+    private final int[]startPcs;        // closure of all member entries
+    private final boolean[]isStart;
+    private final int[]startMatches;    // members matching the empty string
+    private final int size;
+    private final ConcurrentHashMap<State, State> states = new ConcurrentHashMap<State, State>();
+    private volatile State initial;
+
+    static final class State {
+        final int[]pcs;                 // threads besides the start closure
+        final int[]matches;             // members matching at this position
+        final State[]next = new State[256];
+        private volatile MbTable<State> mbNext; // transitions over multibyte characters
+        private final int hash;
+
+        State(int[]pcs, int[]matches) {
+            this.pcs = pcs;
+            this.matches = matches;
+            this.hash = Arrays.hashCode(pcs);
+        }
+
+        State mbNext(int key) {
+            MbTable<State> table = mbNext;
+            return table == null ? null : table.get(key);
+        }
+
+        synchronized void mbPut(int key, State st) {
+            MbTable<State> table = mbNext;
+            mbNext = (table == null ? new MbTable<State>(16) : table).put(key, st);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof State && Arrays.equals(pcs, ((State)other).pcs);
+        }
+    }
+
+    // scratch space of a scan, allocated on the first transition not found in the cache
+    private static final class Work {
+        final int[]list, seen, stack;
+        final IntHolder holder = new IntHolder();
+        final byte[]buf = new byte[Config.ENC_MBC_CASE_FOLD_MAXLEN];
+        int gen;
+
+        Work(int length) {
+            list = new int[length];
+            seen = new int[length];
+            stack = new int[(length << 1) + 2];
+        }
+    }
+
+    // members must share encoding and case fold flag and have an assertion free automaton
+    AutomatonSet(Regex[]members) {
+        int length = 0;
+        for (Regex member : members) length += member.automaton.code.length;
+
+        int[]code = new int[length];
+        int[]starts = new int[members.length];
+        memberOf = new int[length];
+        Arrays.fill(memberOf, -1);
+
+        int offset = 0;
+        for (int i = 0; i < members.length; i++) {
+            Automaton a = members[i].automaton;
+            starts[i] = offset;
+            System.arraycopy(a.code, 0, code, offset, a.code.length);
+            for (int pc = 0; pc < a.code.length; pc = a.next(pc)) {
+                switch (a.code[pc]) {
+                case Automaton.SPLIT:
+                    code[offset + pc + 1] += offset;
+                    code[offset + pc + 2] += offset;
+                    break;
+                case Automaton.JUMP:
+                    code[offset + pc + 1] += offset;
+                    break;
+                case Automaton.MATCH:
+                    memberOf[offset + pc] = i;
+                    break;
+                default:
+                }
+            }
+            offset += a.code.length;
+        }
+        Regex first = members[0];
+        automaton = new Automaton(first.enc, first.caseFoldFlag, code, 0);
+
+        Work work = new Work(length);
+        work.gen++;
+        int count = 0;
+        for (int start : starts) count = closure(work, count, start);
+        startPcs = Arrays.copyOf(work.list, count);
+        Arrays.sort(startPcs);
+        isStart = new boolean[length];
+        for (int pc : startPcs) isStart[pc] = true;
+        startMatches = matchesOf(startPcs);
+        size = members.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Marks the members matching anywhere in bytes[p..end), returns the number of members still pending
+     * or Automaton.BAIL when the subject holds characters the automaton cannot step over.
+     */
+    int scan(byte[]bytes, int p, int end, boolean[]found, int pending) {
+        Encoding enc = automaton.enc;
+        Work work = null;
+        for (int member : startMatches) {
+            if (!found[member]) {
+                found[member] = true;
+                pending--;
+            }
+        }
+
+        State st = initial;
+        if (st == null) initial = st = intern(new int[0], 0);
+        int s = p;
+        while (true) {
+            for (int member : st.matches) {
+                if (!found[member]) {
+                    found[member] = true;
+                    pending--;
+                }
+            }
+            if (pending == 0 || s >= end) return pending;
+
+            int n = 1;
+            if (!enc.isSingleByte()) {
+                n = enc.length(bytes, s, end);
+                if (n <= 0 || s + n > end) return Automaton.BAIL;
+            }
+            State next;
+            int key = 0;
+            if (n == 1) {
+                next = st.next[bytes[s] & 0xff];
+            } else {
+                key = MbTable.key(bytes, s, n, false);
+                next = key == 0 ? null : st.mbNext(key);
+            }
+            if (next == null) {
+                if (work == null) work = new Work(automaton.code.length);
+                next = step(st, bytes, s, n, end, work);
+                if (next == null) return Automaton.BAIL;
+                if (n == 1) {
+                    st.next[bytes[s] & 0xff] = next;
+                } else if (key != 0) {
+                    st.mbPut(key, next);
+                }
+            }
+            st = next;
+            s += n;
+        }
+    }
+
+    private State step(State st, byte[]bytes, int s, int n, int end, Work work) {
+        work.gen++;
+        int size = 0;
+        size = advance(st.pcs, bytes, s, n, end, work, size);
+        if (size < 0) return null;
+        size = advance(startPcs, bytes, s, n, end, work, size);
+        if (size < 0) return null;
+        return intern(work.list, size);
+    }
+
+    private int advance(int[]pcs, byte[]bytes, int s, int n, int end, Work work, int size) {
+        for (int pc : pcs) {
+            if (memberOf[pc] != -1) continue;
+            int next = automaton.consume(pc, bytes, s, n, end, end, work.holder, work.buf);
+            if (next == Automaton.BAIL) return -1;
+            if (next != Automaton.FAIL) size = closure(work, size, next);
+        }
+        return size;
+    }
+
+    private int[]matchesOf(int[]pcs) {
+        int matches = 0;
+        for (int pc : pcs) {
+            if (memberOf[pc] != -1) matches++;
+        }
+        int[]members = new int[matches];
+        matches = 0;
+        for (int pc : pcs) {
+            if (memberOf[pc] != -1) members[matches++] = memberOf[pc];
+        }
+        return members;
+    }
+
+    private State intern(int[]list, int size) {
+        int[]pcs = Arrays.copyOf(list, size);
+        Arrays.sort(pcs);
+
+        State st = new State(pcs, matchesOf(pcs));
+        State prev = states.putIfAbsent(st, st);
+        if (prev != null) return prev;
+        if (states.size() > Config.REGEX_SET_MAX_DFA_STATES) { // start over, states already handed out stay usable
+            states.clear();
+            initial = null;
+        }
+        return st;
+    }
+
+    // appends the threads reachable from pc without consuming input that are not part of the start closure
+    private int closure(Work work, int size, int pc) {
+        final int[]code = automaton.code;
+        final int[]seen = work.seen, stack = work.stack, list = work.list;
+        final int gen = work.gen;
+        int sp = 0;
+        stack[sp++] = pc;
+        while (sp > 0) {
+            pc = stack[--sp];
+            while (seen[pc] != gen) {
+                seen[pc] = gen;
+                switch (code[pc]) {
+                case Automaton.JUMP:
+                    pc = code[pc + 1];
+                    continue;
+                case Automaton.SPLIT:
+                    stack[sp++] = code[pc + 2];
+                    pc = code[pc + 1];
+                    continue;
+                case Automaton.SAVE:
+                    pc += 2;
+                    continue;
+                default:
+                    if (isStart == null || !isStart[pc]) list[size++] = pc;
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import static org.joni.ast.QuantifierNode.isRepeatInfinite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.jcodings.Encoding;
+import org.joni.ast.AnchorNode;
+import org.joni.ast.CClassNode;
+import org.joni.ast.CTypeNode;
+import org.joni.ast.EncloseNode;
+import org.joni.ast.ListNode;
+import org.joni.ast.Node;
+import org.joni.ast.QuantifierNode;
+import org.joni.ast.StringNode;
+import org.joni.constants.internal.EncloseType;
+import org.joni.constants.internal.NodeType;
+
+/**
+ * Estimates how much a single match attempt may backtrack, by looking for quantifiers that can
+ * split the same input in many ways.
+ *
+ * A repeated body that can match a string through two different paths (an ambiguous alternation,
+ * or a repeat that can hand its characters over to the next iteration) is exponential. Otherwise a
+ * chain of n repeats whose characters overlap, and which only gives way to characters both can
+ * match, is polynomial of degree n. Characters are compared through the first 256 code points, all
+ * the others are taken as a single one, so the result may overestimate but not miss these shapes.
+ */
+final class BacktrackAnalyser {
+    static final int LARGE_REPEAT = 16;     // bounded repeats from here on count as unbounded
+    private static final int MAX_CHAINS = 32;
+    private static final int MAX_SEQUENCE = 16;
+    private static final int OTHER = 256;   // every code point above 255
+
+    private final Encoding enc;
+    private final IdentityHashMap<Node, Info> infos = new IdentityHashMap<Node, Info>();
+    private int degree = 1;
+    private boolean exponential;
+
+    BacktrackAnalyser(Encoding enc) {
+        this.enc = enc;
+    }
+
+    int complexity(Node root) {
+        scan(root, Collections.<Chain>emptyList());
+        return exponential ? Regex.COMPLEXITY_EXPONENTIAL : degree;
+    }
+
+    private static final class Info {
+        final long[]first = new long[5];
+        final long[]last = new long[5];
+        final long[]chars = new long[5];
+        boolean nullable;
+    }
+
+    private static final class Chain {
+        final Info repeat;      // body of the last repeat in the chain
+        final long[]between;    // chars consumed since then, null if none
+        final int length;
+
+        Chain(Info repeat, long[]between, int length) {
+            this.repeat = repeat;
+            this.between = between;
+            this.length = length;
+        }
+    }
+
+    private static final Comparator<Chain> LONGEST_FIRST = new Comparator<Chain>() {
+        public int compare(Chain a, Chain b) {
+            return b.length - a.length;
+        }
+    };
+
+    private static boolean isRepeating(QuantifierNode qn) {
+        return isRepeatInfinite(qn.upper) || qn.upper >= LARGE_REPEAT;
+    }
+
+    // chains of overlapping repeats reaching the end of node
+    private List<Chain> scan(Node node, List<Chain> in) {
+        switch (node.getType()) {
+        case NodeType.LIST:
+            ListNode ln = (ListNode)node;
+            do {
+                in = scan(ln.value, in);
+            } while ((ln = ln.tail) != null);
+            return in;
+
+        case NodeType.ALT:
+            List<Chain> out = new ArrayList<Chain>();
+            ListNode an = (ListNode)node;
+            do {
+                out.addAll(scan(an.value, in));
+            } while ((an = an.tail) != null);
+            return trim(out);
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            if (qn.upper == 0) return in;
+            if (isRepeating(qn)) {
+                checkRepeat(qn);
+                scan(qn.target, Collections.<Chain>emptyList());
+                Info body = info(qn.target);
+                List<Chain> chains = new ArrayList<Chain>();
+                chains.add(new Chain(body, null, link(in, body)));
+                if (info(node).nullable) chains.addAll(in);
+                return trim(chains);
+            } else {
+                List<Chain> chains = qn.lower == 0 ? new ArrayList<Chain>(in) : new ArrayList<Chain>();
+                List<Chain> cur = in;
+                for (int i = 1; i <= qn.upper; i++) {
+                    cur = scan(qn.target, cur);
+                    if (i >= qn.lower) chains.addAll(cur);
+                }
+                return trim(chains);
+            }
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            switch (en.type) {
+            case EncloseType.MEMORY:
+            case EncloseType.OPTION:
+            case EncloseType.CONDITION:
+                return scan(en.target, in);
+            default:
+                // an atomic repeat scans again for each way the chain splits, but doesn't give back itself
+                scan(en.target, Collections.<Chain>emptyList());
+                if (en.type == EncloseType.STOP_BACKTRACK && en.target.getType() == NodeType.QTFR) {
+                    QuantifierNode target = (QuantifierNode)en.target;
+                    if (isRepeating(target)) link(in, info(target.target));
+                }
+                return pass(in, node);
+            }
+
+        case NodeType.ANCHOR:
+            AnchorNode anchor = (AnchorNode)node;
+            if (anchor.target != null) scan(anchor.target, Collections.<Chain>emptyList());
+            return in;
+
+        default:
+            return pass(in, node);
+        }
+    }
+
+    // length of the longest chain a repeat with the given body extends
+    private int link(List<Chain> in, Info body) {
+        int length = 1;
+        for (Chain c : in) {
+            if (c.length + 1 > length && intersects(c.repeat.last, body.first) &&
+                    (c.between == null || isSubset(c.between, intersection(c.repeat.chars, body.chars)))) {
+                length = c.length + 1;
+            }
+        }
+        if (length > degree) degree = length;
+        return length;
+    }
+
+    // a chain survives a node it may give way to
+    private List<Chain> pass(List<Chain> in, Node node) {
+        Info info = info(node);
+        if (info.nullable || in.isEmpty()) return in;
+        List<Chain> out = new ArrayList<Chain>();
+        for (Chain c : in) {
+            long[]between = c.between == null ? info.chars : union(c.between, info.chars);
+            if (isSubset(between, c.repeat.chars)) out.add(new Chain(c.repeat, between, c.length));
+        }
+        return out;
+    }
+
+    private static List<Chain> trim(List<Chain> chains) {
+        if (chains.size() <= MAX_CHAINS) return chains;
+        Collections.sort(chains, LONGEST_FIRST);
+        return new ArrayList<Chain>(chains.subList(0, MAX_CHAINS));
+    }
+
+    private void checkRepeat(QuantifierNode qn) {
+        if (exponential) return;
+        Info body = info(qn.target);
+        checkBody(qn.target, body, true, true);
+    }
+
+    // looks for the parts of a repeated body that can match the same input in different ways
+    private void checkBody(Node node, Info body, boolean head, boolean tail) {
+        switch (node.getType()) {
+        case NodeType.LIST:
+            List<Node> elements = new ArrayList<Node>();
+            ListNode ln = (ListNode)node;
+            do {
+                elements.add(ln.value);
+            } while ((ln = ln.tail) != null);
+            int n = elements.size();
+            boolean[]restNullable = new boolean[n + 1];
+            restNullable[n] = true;
+            for (int i = n - 1; i >= 0; i--) restNullable[i] = restNullable[i + 1] && info(elements.get(i)).nullable;
+            boolean prefixNullable = true;
+            for (int i = 0; i < n; i++) {
+                checkBody(elements.get(i), body, head && prefixNullable, tail && restNullable[i + 1]);
+                prefixNullable &= info(elements.get(i)).nullable;
+            }
+            break;
+
+        case NodeType.ALT:
+            List<Node> branches = new ArrayList<Node>();
+            ListNode an = (ListNode)node;
+            do {
+                branches.add(an.value);
+                checkBody(an.value, body, head, tail);
+            } while ((an = an.tail) != null);
+            for (int i = 0; i < branches.size(); i++) {
+                for (int j = i + 1; j < branches.size(); j++) {
+                    if (isAmbiguous(branches.get(i), branches.get(j), body)) exponential = true;
+                }
+            }
+            break;
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            if (qn.upper == 0) break;
+            if (isRepeating(qn)) {
+                long[]chars = info(qn.target).chars;
+                if (!body.nullable && isSubset(body.chars, chars)) exponential = true;
+                if (tail && intersects(body.first, chars)) exponential = true;
+                if (head && intersects(body.last, chars)) exponential = true;
+            } else {
+                checkBody(qn.target, body, head, tail);
+            }
+            break;
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            if (en.type == EncloseType.MEMORY || en.type == EncloseType.OPTION || en.type == EncloseType.CONDITION) {
+                checkBody(en.target, body, head, tail);
+            }
+            break;
+        }
+    }
+
+    private boolean isAmbiguous(Node a, Node b, Info body) {
+        List<long[]> sa = new ArrayList<long[]>();
+        List<long[]> sb = new ArrayList<long[]>();
+        if (sequence(a, sa) && sequence(b, sb)) {
+            int m = Math.min(sa.size(), sb.size());
+            for (int i = 0; i < m; i++) {
+                if (!intersects(sa.get(i), sb.get(i))) return false;
+            }
+            if (sa.size() == sb.size()) return true;
+            long[]next = (sa.size() > m ? sa : sb).get(m);
+            return intersects(next, body.first);
+        }
+        return intersects(info(a).first, info(b).first);
+    }
+
+    // a node matching a fixed number of chars, one set per position
+    private boolean sequence(Node node, List<long[]> seq) {
+        if (seq.size() > MAX_SEQUENCE) return false;
+        switch (node.getType()) {
+        case NodeType.STR:
+            StringNode sn = (StringNode)node;
+            int p = sn.p;
+            while (p < sn.end) {
+                long[]set = new long[5];
+                addChar(set, sn, p);
+                seq.add(set);
+                p += Math.max(enc.length(sn.bytes, p, sn.end), 1);
+            }
+            return true;
+
+        case NodeType.CCLASS:
+        case NodeType.CTYPE:
+        case NodeType.CANY:
+            seq.add(info(node).chars);
+            return true;
+
+        case NodeType.LIST:
+            ListNode ln = (ListNode)node;
+            do {
+                if (!sequence(ln.value, seq)) return false;
+            } while ((ln = ln.tail) != null);
+            return true;
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            if (qn.lower != qn.upper || qn.upper > MAX_SEQUENCE) return false;
+            for (int i = 0; i < qn.upper; i++) {
+                if (!sequence(qn.target, seq)) return false;
+            }
+            return true;
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            if (en.type != EncloseType.MEMORY && en.type != EncloseType.OPTION) return false;
+            return sequence(en.target, seq);
+
+        default:
+            return false;
+        }
+    }
+
+    private Info info(Node node) {
+        Info info = infos.get(node);
+        if (info != null) return info;
+        info = new Info();
+
+        switch (node.getType()) {
+        case NodeType.LIST: {
+            info.nullable = true;
+            ListNode ln = (ListNode)node;
+            do {
+                Info e = info(ln.value);
+                if (info.nullable) or(info.first, e.first);
+                if (e.nullable) {
+                    or(info.last, e.last);
+                } else {
+                    System.arraycopy(e.last, 0, info.last, 0, 5);
+                }
+                or(info.chars, e.chars);
+                info.nullable &= e.nullable;
+            } while ((ln = ln.tail) != null);
+            break;
+        }
+
+        case NodeType.ALT: {
+            ListNode an = (ListNode)node;
+            do {
+                Info e = info(an.value);
+                or(info.first, e.first);
+                or(info.last, e.last);
+                or(info.chars, e.chars);
+                info.nullable |= e.nullable;
+            } while ((an = an.tail) != null);
+            break;
+        }
+
+        case NodeType.STR:
+            StringNode sn = (StringNode)node;
+            int p = sn.p;
+            if (p >= sn.end) {
+                info.nullable = true;
+                break;
+            }
+            addChar(info.first, sn, p);
+            while (p < sn.end) {
+                int last = p;
+                addChar(info.chars, sn, p);
+                p += Math.max(enc.length(sn.bytes, p, sn.end), 1);
+                if (p >= sn.end) addChar(info.last, sn, last);
+            }
+            break;
+
+        case NodeType.CCLASS:
+            CClassNode cc = (CClassNode)node;
+            for (int c = 0; c < OTHER; c++) {
+                if (cc.isCodeInCC(enc, c)) set(info.chars, c);
+            }
+            if (cc.mbuf != null || cc.isNot()) set(info.chars, OTHER);
+            setSingle(info);
+            break;
+
+        case NodeType.CTYPE:
+            CTypeNode cn = (CTypeNode)node;
+            int limit = cn.asciiRange ? 0x80 : OTHER;
+            for (int c = 0; c < OTHER; c++) {
+                if ((c < limit && enc.isCodeCType(c, cn.ctype)) != cn.not) set(info.chars, c);
+            }
+            if (cn.not || !cn.asciiRange) set(info.chars, OTHER);
+            setSingle(info);
+            break;
+
+        case NodeType.CANY:
+            fill(info.chars);
+            setSingle(info);
+            break;
+
+        case NodeType.QTFR:
+            QuantifierNode qn = (QuantifierNode)node;
+            if (qn.upper == 0) {
+                info.nullable = true;
+            } else {
+                copy(info(qn.target), info);
+                info.nullable |= qn.lower == 0;
+            }
+            break;
+
+        case NodeType.ENCLOSE:
+            EncloseNode en = (EncloseNode)node;
+            if (en.type == EncloseType.ABSENT) {
+                fillAll(info);
+            } else {
+                copy(info(en.target), info);
+            }
+            break;
+
+        case NodeType.ANCHOR:
+            info.nullable = true;
+            break;
+
+        default: // back references and calls may match anything
+            fillAll(info);
+            break;
+        }
+
+        infos.put(node, info);
+        return info;
+    }
+
+    private void addChar(long[]set, StringNode sn, int p) {
+        int code = enc.mbcToCode(sn.bytes, p, sn.end);
+        if (code >= 0 && code < OTHER) {
+            set(set, code);
+            if (sn.isAmbig()) {
+                if (code >= 'a' && code <= 'z') set(set, code - 0x20);
+                else if (code >= 'A' && code <= 'Z') set(set, code + 0x20);
+                else if (code >= 0x80) set(set, OTHER);
+            }
+        } else {
+            set(set, OTHER);
+        }
+    }
+
+    private static void setSingle(Info info) {
+        System.arraycopy(info.chars, 0, info.first, 0, 5);
+        System.arraycopy(info.chars, 0, info.last, 0, 5);
+    }
+
+    private static void fillAll(Info info) {
+        fill(info.first);
+        fill(info.last);
+        fill(info.chars);
+        info.nullable = true;
+    }
+
+    private static void copy(Info from, Info to) {
+        System.arraycopy(from.first, 0, to.first, 0, 5);
+        System.arraycopy(from.last, 0, to.last, 0, 5);
+        System.arraycopy(from.chars, 0, to.chars, 0, 5);
+        to.nullable = from.nullable;
+    }
+
+    private static void set(long[]set, int c) {
+        set[c >>> 6] |= 1L << c;
+    }
+
+    private static void fill(long[]set) {
+        for (int i = 0; i < 4; i++) set[i] = -1L;
+        set[4] = 1L;
+    }
+
+    private static void or(long[]to, long[]from) {
+        for (int i = 0; i < 5; i++) to[i] |= from[i];
+    }
+
+    private static long[] union(long[]a, long[]b) {
+        long[]u = new long[5];
+        for (int i = 0; i < 5; i++) u[i] = a[i] | b[i];
+        return u;
+    }
+
+    private static long[] intersection(long[]a, long[]b) {
+        long[]u = new long[5];
+        for (int i = 0; i < 5; i++) u[i] = a[i] & b[i];
+        return u;
+    }
+
+    private static boolean intersects(long[]a, long[]b) {
+        for (int i = 0; i < 5; i++) {
+            if ((a[i] & b[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    private static boolean isSubset(long[]a, long[]b) {
+        for (int i = 0; i < 5; i++) {
+            if ((a[i] & ~b[i]) != 0) return false;
+        }
+        return true;
+    }
+}
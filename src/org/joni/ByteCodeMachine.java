@@ -27,6 +27,8 @@ import static org.joni.Option.isFindNotEmpty;
 import static org.joni.Option.isNotBol;
 import static org.joni.Option.isNotEol;
 
+import java.util.Arrays;
+
 import org.jcodings.CodeRange;
 import org.jcodings.Encoding;
 import org.jcodings.IntHolder;
@@ -52,9 +54,23 @@ class ByteCodeMachine extends StackMachine {
     private final int[]code;        // byte code
     private int ip;                 // instruction pointer
 
+    private long retryLimit;        // retries at which the match attempt stops
+    private long retryCheck;        // retries after which the limit or memoization need a look
+    private boolean retryLimitExceeded;
+
+    private long memoStart;         // retries at which memoization starts
+    private boolean memoizing;
+    private long[]memo;             // branches taken at each position, see Regex.memoIndex
+    private int memoWidth;
+    private int memoRange;
+    private long[]memoScoped;       // bits set for branches inside look-arounds and atomic groups since a body succeeded
+    private int memoScopedNum;
+
     ByteCodeMachine(Regex regex, Region region, byte[]bytes, int p, int end) {
         super(regex, region, bytes, p, end);
-        this.code = regex.code;
+        // generated machines are built against the code with capture opcodes
+        this.code = region == null && regex.captureFreeCode != null && getClass() == ByteCodeMachine.class ?
+                regex.captureFreeCode : regex.code;
     }
 
     @Override
@@ -65,6 +81,16 @@ class ByteCodeMachine extends StackMachine {
         synchronized (this) { interruptCheckEvery = 0; }
     }
 
+    @Override
+    public Matcher reset(byte[]bytes, int p, int end) {
+        super.reset(bytes, p, end);
+        synchronized (this) {
+            interrupted = false;
+            interruptCheckEvery = 256;
+        }
+        return this;
+    }
+
     protected int stkp; // a temporary
     private boolean makeCaptureHistoryTree(CaptureTreeNode node) {
         //CaptureTreeNode child;
@@ -72,23 +98,23 @@ class ByteCodeMachine extends StackMachine {
         //int k = kp;
 
         while (k < stk) {
-            StackEntry e = stack[k];
-            if (e.type == MEM_START) {
-                int n = e.getMemNum();
+            int type = getType(k);
+            if (type == MEM_START) {
+                int n = getMemNum(k);
                 if (n <= Config.MAX_CAPTURE_HISTORY_GROUP && bsAt(regex.captureHistory, n)) {
                     CaptureTreeNode child = new CaptureTreeNode();
                     child.group = n;
-                    child.beg = e.getMemPStr() - str;
+                    child.beg = getMemPStr(k) - str;
                     node.addChild(child);
                     stkp = k + 1;
                     if (makeCaptureHistoryTree(child)) return true;
 
+                    child.end = getMemPStr(k) - str;
                     k = stkp;
-                    child.end = e.getMemPStr() - str;
                 }
-            } else if (e.type == MEM_END) {
-                if (e.getMemNum() == node.group) {
-                    node.end = e.getMemPStr() - str;
+            } else if (type == MEM_END) {
+                if (getMemNum(k) == node.group) {
+                    node.end = getMemPStr(k) - str;
                     stkp = k;
                     return false;
                 }
@@ -155,12 +181,19 @@ class ByteCodeMachine extends StackMachine {
     }
 
     @Override
-    protected final int matchAt(int _range, int _sstart, int _sprev, boolean interrupt) throws InterruptedException {
+    protected int matchAt(int _range, int _sstart, int _sprev, boolean interrupt) throws InterruptedException {
         range = _range;
         sstart = _sstart;
         sprev = _sprev;
         stk = 0;
         ip = 0;
+        retryLimit = retryLimitInMatch == 0 ? Long.MAX_VALUE : retries + retryLimitInMatch;
+        if (retryLimitInSearch != 0) retryLimit = Math.min(retryLimit, retryLimitInSearch);
+        // marks stay valid for the whole search or match call, which starts with no retries
+        if (retries == 0 || _range != memoRange) memoizing = false;
+        memoStart = memoizing || regex.memoIndex == null || isFindLongest(msaOptions) || isFindNotEmpty(msaOptions) ?
+                Long.MAX_VALUE : Config.MEMOIZE_THRESHOLD;
+        checkRetries();
 
         if (Config.DEBUG_MATCH) debugMatchBegin();
         stackInit();
@@ -182,6 +215,7 @@ class ByteCodeMachine extends StackMachine {
             }
 
             if (Config.DEBUG_MATCH) debugMatchLoop();
+            if (Config.USE_METRICS && metrics != null) metrics.opcodes++;
 
             sbegin = s;
             switch (code[ip++]) {
@@ -261,6 +295,8 @@ class ByteCodeMachine extends StackMachine {
 
                 case OPCode.JUMP:                       opJump();                  continue;
                 case OPCode.PUSH:                       opPush();                  continue;
+                case OPCode.ALT_DISPATCH:               opAltDispatch();           continue;
+                case OPCode.LITERAL_TRIE:               opLiteralTrie();           continue;
 
                 case OPCode.POP:                        opPop();                   continue;
                 case OPCode.PUSH_OR_JUMP_EXACT1:        opPushOrJumpExact1();      continue;
@@ -307,7 +343,7 @@ class ByteCodeMachine extends StackMachine {
         } // main while
     }
 
-    private void handleTimeout() throws InterruptedException {
+    final void handleTimeout() throws InterruptedException {
         if (System.nanoTime() - startTime > timeout) throw TIMEOUT_EXCEPTION;
     }
 
@@ -322,6 +358,7 @@ class ByteCodeMachine extends StackMachine {
             }
 
             if (Config.DEBUG_MATCH) debugMatchLoop();
+            if (Config.USE_METRICS && metrics != null) metrics.opcodes++;
 
             sbegin = s;
             switch (code[ip++]) {
@@ -401,6 +438,8 @@ class ByteCodeMachine extends StackMachine {
 
                 case OPCode.JUMP:                       opJump();                  continue;
                 case OPCode.PUSH:                       opPush();                  continue;
+                case OPCode.ALT_DISPATCH:               opAltDispatch();           continue;
+                case OPCode.LITERAL_TRIE:               opLiteralTrie();           continue;
 
                 case OPCode.POP:                        opPop();                   continue;
                 case OPCode.PUSH_OR_JUMP_EXACT1:        opPushOrJumpExact1();      continue;
@@ -450,11 +489,16 @@ class ByteCodeMachine extends StackMachine {
         } // main while
     }
 
-    private void handleInterrupted(final boolean checkThreadInterrupt) throws InterruptedException {
+    final void handleInterrupted(final boolean checkThreadInterrupt) throws InterruptedException {
         if (interrupted || (checkThreadInterrupt && Thread.currentThread().isInterrupted())) {
             Thread.interrupted();
             throw INTERRUPTED_EXCEPTION;
         }
+        if (retryLimitExceeded) {
+            retryLimitExceeded = false;
+            interruptCheckEvery = 256;
+            throw RETRY_LIMIT_EXCEPTION;
+        }
         interruptCheckEvery = Math.min(interruptCheckEvery << 1, MAX_INTERRUPT_CHECK_EVERY);
     }
 
@@ -484,8 +528,8 @@ class ByteCodeMachine extends StackMachine {
                     int me = repeatStk[memEndStk + i];
                     if (me != INVALID_INDEX) {
                         int ms = repeatStk[memStartStk + i];
-                        region.setBeg(i, (bsAt(regex.btMemStart, i) ? stack[ms].getMemPStr() : ms) - str);
-                        region.setEnd(i, (bsAt(regex.btMemEnd, i) ? stack[me].getMemPStr() : me) - str);
+                        region.setBeg(i, (bsAt(regex.btMemStart, i) ? getMemPStr(ms) : ms) - str);
+                        region.setEnd(i, (bsAt(regex.btMemEnd, i) ? getMemPStr(me) : me) - str);
                     } else {
                         region.setBeg(i, Region.REGION_NOTPOS);
                         region.setEnd(i, Region.REGION_NOTPOS);
@@ -496,6 +540,7 @@ class ByteCodeMachine extends StackMachine {
             } else {
                 msaBegin = ((pkeep > s) ? s : pkeep) - str;
                 msaEnd   = s      - str;
+                msaMatchStart = sstart - str;
             }
         } else {
             Region region = msaRegion;
@@ -950,6 +995,7 @@ class ByteCodeMachine extends StackMachine {
     private void opAnyCharStar() {
         final byte[]bytes = this.bytes;
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             pushAlt(ip, s, sprev, pkeep);
             int n = enc.length(bytes, s, end);
             if (s + n > range) {opFail(); return;}
@@ -962,6 +1008,7 @@ class ByteCodeMachine extends StackMachine {
     private void opAnyCharStarSb() {
         final byte[]bytes = this.bytes;
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             pushAlt(ip, s, sprev, pkeep);
             if (bytes[s] == Encoding.NEW_LINE) {opFail(); return;}
             sprev = s;
@@ -972,6 +1019,7 @@ class ByteCodeMachine extends StackMachine {
     private void opAnyCharMLStar() {
         final byte[]bytes = this.bytes;
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             pushAlt(ip, s, sprev, pkeep);
             int n = enc.length(bytes, s, end);
             if (s + n > range) {opFail(); return;}
@@ -982,6 +1030,7 @@ class ByteCodeMachine extends StackMachine {
 
     private void opAnyCharMLStarSb() {
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             pushAlt(ip, s, sprev, pkeep);
             sprev = s;
             s++;
@@ -993,6 +1042,7 @@ class ByteCodeMachine extends StackMachine {
         final byte[]bytes = this.bytes;
 
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             if (c == bytes[s]) pushAlt(ip + 1, s, sprev, pkeep);
             int n = enc.length(bytes, s, end);
             if (s + n > range || enc.isNewLine(bytes, s, end)) {opFail(); return;}
@@ -1008,6 +1058,7 @@ class ByteCodeMachine extends StackMachine {
         final byte[]bytes = this.bytes;
 
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             byte b = bytes[s];
             if (c == b) pushAlt(ip + 1, s, sprev, pkeep);
             if (b == Encoding.NEW_LINE) {opFail(); return;}
@@ -1023,6 +1074,7 @@ class ByteCodeMachine extends StackMachine {
         final byte[]bytes = this.bytes;
 
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             if (c == bytes[s]) pushAlt(ip + 1, s, sprev, pkeep);
             int n = enc.length(bytes, s, end);
             if (s + n > range) {opFail(); return;}
@@ -1038,6 +1090,7 @@ class ByteCodeMachine extends StackMachine {
         final byte[]bytes = this.bytes;
 
         while (s < range) {
+            if (memoizing && memoized()) {opFail(); return;}
             if (c == bytes[s]) pushAlt(ip + 1, s, sprev, pkeep);
             sprev = s;
             s++;
@@ -1365,7 +1418,7 @@ class ByteCodeMachine extends StackMachine {
         int mem = code[ip++];
         repeatStk[memEndStk + mem] = s;
         int stkp = getMemStart(mem);
-        repeatStk[memStartStk + mem] = bsAt(regex.btMemStart, mem) ? stkp : stack[stkp].getMemPStr();
+        repeatStk[memStartStk + mem] = bsAt(regex.btMemStart, mem) ? stkp : getMemPStr(stkp);
         pushMemEndMark(mem);
     }
 
@@ -1375,12 +1428,12 @@ class ByteCodeMachine extends StackMachine {
 
     private int backrefStart(int mem) {
         int ms = repeatStk[memStartStk + mem];
-        return bsAt(regex.btMemStart, mem) ? stack[ms].getMemPStr() : ms;
+        return bsAt(regex.btMemStart, mem) ? getMemPStr(ms) : ms;
     }
 
     private int backrefEnd(int mem) {
         int me = repeatStk[memEndStk + mem];
-        return bsAt(regex.btMemEnd, mem) ? stack[me].getMemPStr() : me;
+        return bsAt(regex.btMemEnd, mem) ? getMemPStr(me) : me;
     }
 
     private void backref(int mem) {
@@ -1513,16 +1566,16 @@ class ByteCodeMachine extends StackMachine {
         int k = stk - 1;
 
         while (k >= 0) {
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if (e.type == CALL_FRAME) {
+            if (type == CALL_FRAME) {
                 level--;
-            } else if (e.type == RETURN) {
+            } else if (type == RETURN) {
                 level++;
             } else if (level == nest) {
-                if (e.type == MEM_START) {
-                    if (memIsInMemp(e.getMemNum(), memNum, memp)) {
-                        int pstart = e.getMemPStr();
+                if (type == MEM_START) {
+                    if (memIsInMemp(getMemNum(k), memNum, memp)) {
+                        int pstart = getMemPStr(k);
                         if (pend != -1) {
                             if (pend - pstart > end - s) return false; /* or goto next_mem; */
                             int p = pstart;
@@ -1542,9 +1595,9 @@ class ByteCodeMachine extends StackMachine {
                             return true;
                         }
                     }
-                } else if (e.type == MEM_END) {
-                    if (memIsInMemp(e.getMemNum(), memNum, memp)) {
-                        pend = e.getMemPStr();
+                } else if (type == MEM_END) {
+                    if (memIsInMemp(getMemNum(k), memNum, memp)) {
+                        pend = getMemPStr(k);
                     }
                 }
             }
@@ -1663,10 +1716,72 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opPush() {
+        if (memoizing && memoized()) {opFail(); return;}
         int addr = code[ip++];
         pushAlt(ip + addr, s, sprev, pkeep);
     }
 
+    private void opAltDispatch() {
+        if (memoizing && memoized()) {opFail(); return;}
+        int[]dispatch = regex.altDispatch;
+        int list = dispatch[code[ip++] + (s < end ? bytes[s] & 0xff : 256)];
+        int n = dispatch[list];
+        if (n == 0) {opFail(); return;}
+        for (int i = list + n; i > list + 1; i--) pushAlt(ip + dispatch[i], s, sprev, pkeep);
+        ip += dispatch[list + 1];
+    }
+
+    private int[]trieEnds;      // trie nodes of the strings found by opLiteralTrie
+
+    // nodes of ArrayCompiler.addLiteralTrie: string or -1, depth, last character length, children, byte and node pairs
+    private void opLiteralTrie() {
+        if (memoizing && memoized()) {opFail(); return;}
+        int[]trie = regex.literalTries;
+        int node = code[ip++];
+        int[]ends = trieEnds;
+        int n = 0;
+        int x = s;
+        while (true) {
+            int literal = trie[node];
+            if (literal != -1) {
+                if (ends == null) {
+                    ends = trieEnds = new int[8];
+                } else if (n == ends.length) {
+                    ends = trieEnds = Arrays.copyOf(ends, n << 1);
+                }
+                int i = n++; // in branch order, a string can come before its prefixes
+                while (i > 0 && trie[ends[i - 1]] > literal) {
+                    ends[i] = ends[i - 1];
+                    i--;
+                }
+                ends[i] = node;
+            }
+            if (x >= range) break;
+            int c = bytes[x] & 0xff;
+            int lo = node + 4, last = lo + (trie[node + 3] << 1), hi = last;
+            while (lo < hi) {
+                int mid = lo + (((hi - lo) >>> 2) << 1);
+                if (trie[mid] < c) {
+                    lo = mid + 2;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == last || trie[lo] != c) break;
+            node = trie[lo + 1];
+            x++;
+        }
+        if (n == 0) {opFail(); return;}
+
+        for (int i = n - 1; i > 0; i--) {
+            node = ends[i];
+            pushAlt(ip, s + trie[node + 1], trie[node + 2] == 0 ? sprev : s + trie[node + 1] - trie[node + 2], pkeep);
+        }
+        node = ends[0];
+        if (trie[node + 2] != 0) sprev = s + trie[node + 1] - trie[node + 2];
+        s += trie[node + 1];
+    }
+
     // CEC
     private void opStateCheckPush() {
         int mem = code[ip++];
@@ -1699,6 +1814,7 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opPushOrJumpExact1() {
+        if (memoizing && memoized()) {opFail(); return;}
         int addr = code[ip++];
         // beyond string check
         if (s < range && code[ip] == bytes[s]) {
@@ -1710,6 +1826,7 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opPushIfPeekNext() {
+        if (memoizing && memoized()) {opFail(); return;}
         int addr = code[ip++];
         // beyond string check
         if (s < range && code[ip] == bytes[s]) {
@@ -1748,17 +1865,15 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void repeatInc(int mem, int si) {
-        StackEntry e = stack[si];
+        int count = increaseRepeatCount(si);
 
-        e.increaseRepeatCount();
-
-        if (e.getRepeatCount() >= regex.repeatRangeHi[mem]) {
+        if (count >= regex.repeatRangeHi[mem]) {
             /* end of repeat. Nothing to do. */
-        } else if (e.getRepeatCount() >= regex.repeatRangeLo[mem]) {
+        } else if (count >= regex.repeatRangeLo[mem]) {
             pushAlt(ip, s, sprev, pkeep);
-            ip = e.getRepeatPCode(); /* Don't use stkp after PUSH. */
+            ip = getRepeatPCode(si); /* Don't use stkp after PUSH. */
         } else {
-            ip = e.getRepeatPCode();
+            ip = getRepeatPCode(si);
         }
         pushRepeatInc(si);
     }
@@ -1776,20 +1891,18 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void repeatIncNG(int mem, int si) {
-        StackEntry e = stack[si];
-
-        e.increaseRepeatCount();
+        int count = increaseRepeatCount(si);
 
-        if (e.getRepeatCount() < regex.repeatRangeHi[mem]) {
-            if (e.getRepeatCount() >= regex.repeatRangeLo[mem]) {
-                int pcode = e.getRepeatPCode();
+        if (count < regex.repeatRangeHi[mem]) {
+            if (count >= regex.repeatRangeLo[mem]) {
+                int pcode = getRepeatPCode(si);
                 pushRepeatInc(si);
                 pushAlt(pcode, s, sprev, pkeep);
             } else {
-                ip = e.getRepeatPCode();
+                ip = getRepeatPCode(si);
                 pushRepeatInc(si);
             }
-        } else if (e.getRepeatCount() == regex.repeatRangeHi[mem]) {
+        } else if (count == regex.repeatRangeHi[mem]) {
             pushRepeatInc(si);
         }
     }
@@ -1811,9 +1924,10 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opPopPos() {
-        StackEntry e = stack[posEnd()];
-        s    = e.getStatePStr();
-        sprev= e.getStatePStrPrev();
+        if (memoScopedNum > 0) memoForgetScoped();
+        int k = posEnd();
+        s    = getStatePStr(k);
+        sprev= getStatePStrPrev(k);
     }
 
     private void opPushPosNot() {
@@ -1822,6 +1936,7 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opFailPos() {
+        if (memoScopedNum > 0) memoForgetScoped();
         popTilPosNot();
         opFail();
     }
@@ -1831,6 +1946,7 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opPopStopBT() {
+        if (memoScopedNum > 0) memoForgetScoped();
         stopBtEnd();
     }
 
@@ -1865,6 +1981,7 @@ class ByteCodeMachine extends StackMachine {
     }
 
     private void opFailLookBehindNot() {
+        if (memoScopedNum > 0) memoForgetScoped();
         popTilLookBehindNot();
         opFail();
     }
@@ -1876,9 +1993,8 @@ class ByteCodeMachine extends StackMachine {
     private void opAbsent() {
         int aend = range; // use end for USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE
         int selfip = ip - 1;
-        StackEntry e = stack[--stk];
-        int absent = e.getAbsentStr();
-        range = e.getAbsentEndStr();
+        int absent = getAbsentStr(--stk);
+        range = getAbsentEndStr(stk);
         int addr = code[ip++];
 
         if (Config.DEBUG_MATCH) System.out.println("ABSENT: s:" + s + " end:" + end + " absent:" + absent + " aend:" + aend);
@@ -1924,6 +2040,64 @@ class ByteCodeMachine extends StackMachine {
         pushReturn();
     }
 
+    private void checkRetries() {
+        if (retries > retryLimit) {
+            retryLimitExceeded = true;
+            interruptCheckEvery = 0; // stop before the next instruction
+        }
+        if (retries >= memoStart) startMemo();
+        retryCheck = Math.min(retryLimit, memoStart - 1);
+    }
+
+    private void startMemo() {
+        memoStart = Long.MAX_VALUE;
+        int width = end - str + 1;
+        long words = ((long)regex.memoRows * width + 63) >>> 6;
+        if (words > Config.MEMOIZE_MAX_SIZE >>> 3) return;
+        if (memo == null || memo.length < words) {
+            memo = new long[(int)words];
+        } else {
+            Arrays.fill(memo, 0, (int)words, 0);
+        }
+        memoWidth = width;
+        memoRange = range;
+        memoScopedNum = 0;
+        memoizing = true;
+    }
+
+    // whether the branch at ip - 1 was taken at s before, taking it again would fail the same way
+    private boolean memoized() {
+        int row = regex.memoIndex[ip - 1];
+        if (row == -1) return false;
+        boolean scoped = row < -1;
+        if (scoped) row = -2 - row;
+        long bit = (long)row * memoWidth + s - str;
+        int word = (int)(bit >>> 6);
+        long mask = 1L << bit;
+        if ((memo[word] & mask) != 0) return true;
+        memo[word] |= mask;
+        if (scoped) {
+            if (memoScoped == null) {
+                memoScoped = new long[16];
+            } else if (memoScopedNum == memoScoped.length) {
+                memoScoped = Arrays.copyOf(memoScoped, memoScopedNum << 1);
+            }
+            memoScoped[memoScopedNum++] = bit;
+        }
+        return false;
+    }
+
+    /* A look-around or atomic group body that succeeded cuts off its branches, so having taken them no longer
+     * means failing: the next evaluation of the body, at another position, may get there and succeed.
+     */
+    private void memoForgetScoped() {
+        for (int i = 0; i < memoScopedNum; i++) {
+            long bit = memoScoped[i];
+            memo[(int)(bit >>> 6)] &= ~(1L << bit);
+        }
+        memoScopedNum = 0;
+    }
+
     private void opFail() {
         if (stack == null) {
             ip = regex.codeLength - 1;
@@ -1931,15 +2105,17 @@ class ByteCodeMachine extends StackMachine {
         }
 
 
-        StackEntry e = pop();
-        ip    = e.getStatePCode();
-        s     = e.getStatePStr();
-        sprev = e.getStatePStrPrev();
-        pkeep = e.getPKeep();
+        if (++retries > retryCheck) checkRetries();
+
+        int k = pop();
+        ip    = getStatePCode(k);
+        s     = getStatePStr(k);
+        sprev = getStatePStrPrev(k);
+        pkeep = getPKeep(k);
 
         if (USE_CEC) {
-            if (((SCStackEntry)e).getStateCheck() != 0) {
-                e.type = STATE_CHECK_MARK;
+            if (getStateCheck(k) != 0) {
+                setType(k, STATE_CHECK_MARK);
                 stk++;
             }
         }
@@ -365,6 +365,13 @@ class ByteCodePrinter {
                 sb.append(':').append(mem).append(":").append(addr);
                 break;
 
+            case OPCode.ALT_DISPATCH:
+            case OPCode.LITERAL_TRIE:
+                idx = code[bp];
+                bp += OPSize.INDEX;
+                sb.append(":T:").append(idx);
+                break;
+
             default:
                 throw new InternalException("undefined code: " + code[--bp]);
             }
@@ -0,0 +1,113 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+/**
+ * Relative byte frequencies used to pick the anchor byte of an exact string search.
+ * Each byte value has a rank from 0 (rarest) to 255 (most common); literals are
+ * searched for by scanning for their rarest byte and verifying around each hit.
+ * The default table is drawn from a mix of prose, source code, markup and binaries.
+ */
+public final class ByteFrequencies {
+    private static final int[] DEFAULT_RANKS = {
+        243, 194, 175, 172, 179, 174, 160, 139, 165, 226, 241, 135, 136, 132, 168, 180,   /* 0x00 */
+        159, 114, 129, 130, 122,  73,  47,  54, 144,  68,  43,  20,  77,  30,  32, 147,   /* 0x10 */
+        255, 126, 233, 196, 171, 127, 140, 184, 224, 221, 212, 176, 207, 228, 230, 232,   /* 0x20 */
+        220, 209, 202, 195, 185, 193, 187, 178, 182, 197, 214, 183, 234, 217, 235,  53,   /* 0x30 */
+        167, 219, 190, 210, 200, 227, 192, 189, 201, 215, 157, 177, 216, 198, 213, 208,   /* 0x40 */
+        205, 133, 211, 229, 218, 191, 173, 166, 188, 164, 138, 148, 158, 151,  65, 245,   /* 0x50 */
+        143, 251, 225, 246, 242, 254, 237, 231, 236, 248, 186, 223, 244, 239, 250, 249,   /* 0x60 */
+        240, 154, 247, 252, 253, 238, 206, 203, 204, 222, 170, 146, 137, 149,  67,  66,   /* 0x70 */
+        141, 110, 113, 162, 152, 156, 105,  64, 108, 181,  23, 169,  94, 155,  72,  70,   /* 0x80 */
+        131,  58,  19,  38,  96,  49,  39,  18,  85,  33,  10,  28,  63,  27,  29, 123,   /* 0x90 */
+         92,  78,  11,  51,  41,   7,   6,  42,  74,  37,  21,  15,  34,  36,   8,  25,   /* 0xa0 */
+        121,  52,  26,  45,  69,  89,  90,  87, 124,  56, 103,  76,  91, 100, 116,  84,   /* 0xb0 */
+        153, 118,  71, 150, 120,  81,  82, 128,  57,  59,  12,   1,  22,   2,  97,  50,   /* 0xc0 */
+        161, 134,  95,  14,  16,   5,  13, 109, 104,  48,   4,  17,   3,   0,   9,  93,   /* 0xd0 */
+        107,  80,  79,  83,  46, 101, 115, 112, 163, 145,  40, 119, 102,  61,  55, 117,   /* 0xe0 */
+         99,  24, 106,  60,  35,  31,  98,  62, 111,  44,  75,  86,  88, 125, 142, 199,   /* 0xf0 */
+    };
+
+    public static final ByteFrequencies DEFAULT = new ByteFrequencies(DEFAULT_RANKS);
+
+    private static volatile ByteFrequencies current = DEFAULT;
+
+    private final int[] ranks;
+
+    private ByteFrequencies(int[] ranks) {
+        this.ranks = ranks;
+    }
+
+    /**
+     * Builds a table from 256 occurrence counts, indexed by unsigned byte value.
+     */
+    public static ByteFrequencies fromCounts(long[] counts) {
+        if (counts.length != 256) throw new IllegalArgumentException("counts length: " + counts.length);
+        int[] ranks = new int[256];
+        for (int i = 0; i < 256; i++) {
+            if (counts[i] < 0) throw new IllegalArgumentException("negative count for byte: " + i);
+            int rank = 0;
+            for (int j = 0; j < 256; j++) {
+                if (counts[j] < counts[i] || (counts[j] == counts[i] && j < i)) rank++;
+            }
+            ranks[i] = rank;
+        }
+        return new ByteFrequencies(ranks);
+    }
+
+    /**
+     * Builds a table from a sample of the data that is going to be searched.
+     */
+    public static ByteFrequencies train(byte[] bytes, int p, int end) {
+        long[] counts = new long[256];
+        for (int i = p; i < end; i++) counts[bytes[i] & 0xff]++;
+        return fromCounts(counts);
+    }
+
+    public static ByteFrequencies train(byte[] bytes) {
+        return train(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The table consulted when regular expressions are compiled; patterns compiled
+     * before a change keep the anchor they were compiled with.
+     */
+    public static ByteFrequencies getDefault() {
+        return current;
+    }
+
+    public static void setDefault(ByteFrequencies frequencies) {
+        if (frequencies == null) throw new IllegalArgumentException("frequencies: null");
+        current = frequencies;
+    }
+
+    public int rank(int b) {
+        return ranks[b & 0xff];
+    }
+
+    // offset of the rarest byte in bytes[p..end), the first one on ties
+    int rarest(byte[] bytes, int p, int end) {
+        int best = p;
+        for (int i = p + 1; i < end; i++) {
+            if (ranks[bytes[i] & 0xff] < ranks[bytes[best] & 0xff]) best = i;
+        }
+        return best - p;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+/**
+ * Byte scanning primitives used by the forward search strategies.
+ * This is the Java 8 version, the multi-release jar carries a word at a time variant for Java 9 and later.
+ */
+final class ByteScan {
+    private ByteScan() {
+    }
+
+    /* first index of b in bytes[p..end), -1 if absent */
+    static int indexOf(byte[]bytes, int p, int end, byte b) {
+        for (int s = p; s < end; s++) {
+            if (bytes[s] == b) return s;
+        }
+        return -1;
+    }
+
+    /* first index of any of b1, b2, b3 in bytes[p..end), -1 if absent */
+    static int indexOfAny(byte[]bytes, int p, int end, byte b1, byte b2, byte b3) {
+        for (int s = p; s < end; s++) {
+            byte b = bytes[s];
+            if (b == b1 || b == b2 || b == b3) return s;
+        }
+        return -1;
+    }
+}
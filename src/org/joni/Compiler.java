@@ -57,12 +57,18 @@ abstract class Compiler implements ErrorMessages {
 
     protected abstract void compileAltNode(ListNode node);
 
+    protected void compileListNode(ListNode node) {
+        do {
+            compileTree(node.value);
+        } while ((node = node.tail) != null);
+    }
+
     private void compileStringRawNode(StringNode sn) {
         if (sn.length() <= 0) return;
         addCompileString(sn.bytes, sn.p, 1 /*sb*/, sn.length(), false);
     }
 
-    private void compileStringNode(StringNode node) {
+    protected void compileStringNode(StringNode node) {
         StringNode sn = node;
         if (sn.length() <= 0) return;
 
@@ -107,10 +113,7 @@ abstract class Compiler implements ErrorMessages {
     protected final void compileTree(Node node) {
         switch (node.getType()) {
         case NodeType.LIST:
-            ListNode lin = (ListNode)node;
-            do {
-                compileTree(lin.value);
-            } while ((lin = lin.tail) != null);
+            compileListNode((ListNode)node);
             break;
 
         case NodeType.ALT:
@@ -35,6 +35,7 @@ public interface Config extends org.jcodings.Config {
     boolean USE_MONOMANIAC_CHECK_CAPTURES_IN_ENDLESS_REPEAT = ConfigSupport.getBoolean("joni.use_monomaniac_check_captures_in_endless_repeat", true); /* /(?:()|())*\2/ */
     boolean USE_NEWLINE_AT_END_OF_STRING_HAS_EMPTY_LINE = ConfigSupport.getBoolean("joni.use_newline_at_end_of_string_has_empty_line", true); /* /\n$/ =~ "\n" */
     boolean USE_WARNING_REDUNDANT_NESTED_REPEAT_OPERATOR = ConfigSupport.getBoolean("joni.use_warning_redundant_nested_repeat_operator", true);
+    boolean USE_WARNING_SUPERLINEAR_BACKTRACK = ConfigSupport.getBoolean("joni.use_warning_superlinear_backtrack", false);
 
     boolean CASE_FOLD_IS_APPLIED_INSIDE_NEGATIVE_CCLASS = ConfigSupport.getBoolean("joni.case_fold_is_applied_inside_negative_cclass", true);
 
@@ -59,6 +60,35 @@ public interface Config extends org.jcodings.Config {
     boolean USE_OP_PUSH_OR_JUMP_EXACT         = ConfigSupport.getBoolean("joni.use_op_push_or_jump_exact", true);
     boolean USE_QTFR_PEEK_NEXT                = ConfigSupport.getBoolean("joni.use_qtfr_peek_next", true);
 
+    // patterns without backreferences, calls, look-around or atomic groups run on a backtracking free automaton
+    boolean USE_AUTOMATON                     = ConfigSupport.getBoolean("joni.use_automaton", true);
+    int AUTOMATON_MAX_SIZE                    = ConfigSupport.getInt("joni.automaton_max_size", 10000);
+    int AUTOMATON_MAX_DFA_STATES              = ConfigSupport.getInt("joni.automaton_max_dfa_states", 1000);
+    int REGEX_SET_MAX_DFA_STATES              = ConfigSupport.getInt("joni.regex_set_max_dfa_states", 10000);
+    int RARE_BYTE_MAX_RANK                    = ConfigSupport.getInt("joni.rare_byte_max_rank", 240);
+    // unbounded prefixes before the exact string are run backwards from its occurrences to find where matches start
+    boolean USE_REVERSE_SUFFIX                = ConfigSupport.getBoolean("joni.use_reverse_suffix", true);
+    // backward searches run the reversed pattern from where matches could end to skip positions no match starts at
+    boolean USE_REVERSE_SEARCH                = ConfigSupport.getBoolean("joni.use_reverse_search", true);
+    // alternations of branches starting with different bytes look up the branches to try in a table of the next byte
+    boolean USE_ALT_DISPATCH                  = ConfigSupport.getBoolean("joni.use_alt_dispatch", true);
+    // alternations of plain strings match through a trie and are searched for with a multi-literal automaton
+    boolean USE_LITERAL_SET                   = ConfigSupport.getBoolean("joni.use_literal_set", true);
+    int LITERAL_SET_MIN_LITERALS              = ConfigSupport.getInt("joni.literal_set_min_literals", 4);
+
+    // default backtracks allowed in a match attempt and in a search, 0 for no limit
+    int RETRY_LIMIT_IN_MATCH                  = ConfigSupport.getInt("joni.retry_limit_in_match", 0);
+    int RETRY_LIMIT_IN_SEARCH                 = ConfigSupport.getInt("joni.retry_limit_in_search", 0);
+
+    // once a search backtracked this often, remember the (branch, position) pairs tried so that
+    // patterns without back references finish in linear time
+    boolean USE_MEMOIZATION                   = ConfigSupport.getBoolean("joni.memoize", true);
+    int MEMOIZE_THRESHOLD                     = ConfigSupport.getInt("joni.memoize_threshold", 10000);
+    int MEMOIZE_MAX_SIZE                      = ConfigSupport.getInt("joni.memoize_max_size", 1 << 24); // bytes
+
+    // matchers with a MatchMetrics.Listener count the work of each search, off leaves no counting in the machines
+    boolean USE_METRICS                       = ConfigSupport.getBoolean("joni.metrics", false);
+
     int INIT_MATCH_STACK_SIZE                 = ConfigSupport.getInt("joni.init_match_stack_size", 64);
 
     boolean OPTIMIZE                          = ConfigSupport.getBoolean("joni.optimize", true);
@@ -0,0 +1,278 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.util.Arrays;
+
+/**
+ * Finds where each of a set of literals first occurs in a subject in a single pass.
+ * Small sets run a bit parallel shift-and over one long, larger ones an Aho-Corasick automaton
+ * with a dense transition table over the byte classes actually used by the literals.
+ */
+abstract class LiteralPrefilter {
+    static final int NOT_FOUND = -1;
+
+    final byte[][]literals;
+    final int numLiterals;
+    final int maxLength;
+
+    LiteralPrefilter(byte[][]literals) {
+        this.literals = literals;
+        numLiterals = literals.length;
+        int max = 0;
+        for (byte[]literal : literals) {
+            if (literal != null && literal.length > max) max = literal.length;
+        }
+        maxLength = max;
+    }
+
+    /**
+     * Start of the first occurrence of every literal in bytes[p..end), NOT_FOUND for the absent ones
+     * and the null entries of the literal array.
+     */
+    abstract int[]firstOccurrences(byte[]bytes, int p, int end);
+
+    /**
+     * Start of the leftmost occurrence of any literal in bytes[p..end) that starts before range, NOT_FOUND if none.
+     */
+    abstract int firstStart(byte[]bytes, int p, int end, int range);
+
+    // literals may hold null and duplicate entries, null when there is nothing to look for
+    static LiteralPrefilter create(byte[][]literals) {
+        int total = 0, count = 0;
+        for (byte[]literal : literals) {
+            if (literal == null) continue;
+            if (literal.length == 0) throw new IllegalArgumentException("empty literal");
+            total += literal.length;
+            count++;
+        }
+        if (count == 0) return null;
+        return total <= ShiftAnd.MAX_LENGTH ? new ShiftAnd(literals, total) : new AhoCorasick(literals, total);
+    }
+
+    static int[]notFound(int length) {
+        int[]first = new int[length];
+        Arrays.fill(first, NOT_FOUND);
+        return first;
+    }
+
+    static int pendingOf(byte[][]literals) {
+        int pending = 0;
+        for (byte[]literal : literals) {
+            if (literal != null) pending++;
+        }
+        return pending;
+    }
+
+    /* all literals packed into the bits of a single long, bit j is alive when the literal bytes up to j matched */
+    static final class ShiftAnd extends LiteralPrefilter {
+        static final int MAX_LENGTH = 64;
+
+        private final long[]masks = new long[256];
+        private final long startBits, endBits;
+        private final int[]literalAt;   // literal ending at every end bit
+        private final int[]lengths;
+        private final int pending;
+
+        ShiftAnd(byte[][]literals, int total) {
+            super(literals);
+            literalAt = new int[MAX_LENGTH];
+            lengths = new int[literals.length];
+            long starts = 0, ends = 0;
+            int bit = 0;
+            for (int i = 0; i < literals.length; i++) {
+                byte[]literal = literals[i];
+                if (literal == null) continue;
+                lengths[i] = literal.length;
+                starts |= 1L << bit;
+                for (byte b : literal) masks[b & 0xff] |= 1L << bit++;
+                ends |= 1L << (bit - 1);
+                literalAt[bit - 1] = i;
+            }
+            startBits = starts;
+            endBits = ends;
+            pending = pendingOf(literals);
+        }
+
+        @Override
+        int[]firstOccurrences(byte[]bytes, int p, int end) {
+            int[]first = notFound(numLiterals);
+            int pending = this.pending;
+            final long[]masks = this.masks;
+            final long startBits = this.startBits, endBits = this.endBits;
+            long state = 0;
+            for (int s = p; s < end; s++) {
+                state = ((state << 1) | startBits) & masks[bytes[s] & 0xff];
+                long hits = state & endBits;
+                while (hits != 0) {
+                    int bit = Long.numberOfTrailingZeros(hits);
+                    hits &= hits - 1;
+                    int literal = literalAt[bit];
+                    if (first[literal] == NOT_FOUND) {
+                        first[literal] = s + 1 - lengths[literal];
+                        if (--pending == 0) return first;
+                    }
+                }
+            }
+            return first;
+        }
+
+        @Override
+        int firstStart(byte[]bytes, int p, int end, int range) {
+            final long[]masks = this.masks;
+            final long startBits = this.startBits, endBits = this.endBits;
+            int best = range;
+            long state = 0;
+            for (int s = p; s < end && s + 1 - maxLength < best; s++) {
+                state = ((state << 1) | startBits) & masks[bytes[s] & 0xff];
+                long hits = state & endBits;
+                while (hits != 0) {
+                    int bit = Long.numberOfTrailingZeros(hits);
+                    hits &= hits - 1;
+                    int start = s + 1 - lengths[literalAt[bit]];
+                    if (start < best) best = start;
+                }
+            }
+            return best < range ? best : NOT_FOUND;
+        }
+    }
+
+    static final class AhoCorasick extends LiteralPrefilter {
+        private final int[]classes = new int[256];
+        private final int stride;
+        private final int[]delta;       // state * stride + class -> state
+        private final int[][]outputs;   // literals ending in a state, null when none
+        private final int[]lengths;
+        private final int pending;
+
+        AhoCorasick(byte[][]literals, int total) {
+            super(literals);
+            boolean[]used = new boolean[256];
+            for (byte[]literal : literals) {
+                if (literal == null) continue;
+                for (byte b : literal) used[b & 0xff] = true;
+            }
+            int numClasses = 1; // class 0 for the bytes no literal contains
+            for (int c = 0; c < 256; c++) {
+                if (used[c]) classes[c] = numClasses++;
+            }
+            stride = numClasses;
+
+            // trie
+            int[]trie = new int[(total + 1) * stride];
+            int[][]out = new int[total + 1][];
+            int numStates = 1;
+            lengths = new int[literals.length];
+            for (int i = 0; i < literals.length; i++) {
+                byte[]literal = literals[i];
+                if (literal == null) continue;
+                lengths[i] = literal.length;
+                int state = 0;
+                for (byte b : literal) {
+                    int index = state * stride + classes[b & 0xff];
+                    if (trie[index] == 0) trie[index] = numStates++;
+                    state = trie[index];
+                }
+                out[state] = add(out[state], i);
+            }
+
+            // breadth first failure links, turning the trie into a complete transition table
+            delta = Arrays.copyOf(trie, numStates * stride);
+            int[]fail = new int[numStates];
+            int[]queue = new int[numStates];
+            int head = 0, tail = 0;
+            for (int c = 0; c < stride; c++) {
+                int next = delta[c];
+                if (next != 0) queue[tail++] = next;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                int[]inherited = out[fail[state]];
+                if (inherited != null) {
+                    for (int literal : inherited) out[state] = add(out[state], literal);
+                }
+                for (int c = 0; c < stride; c++) {
+                    int index = state * stride + c;
+                    int next = delta[index];
+                    if (next != 0) {
+                        fail[next] = delta[fail[state] * stride + c];
+                        queue[tail++] = next;
+                    } else {
+                        delta[index] = delta[fail[state] * stride + c];
+                    }
+                }
+            }
+            outputs = Arrays.copyOf(out, numStates);
+            pending = pendingOf(literals);
+        }
+
+        private static int[]add(int[]list, int literal) {
+            if (list == null) return new int[] {literal};
+            int[]tmp = Arrays.copyOf(list, list.length + 1);
+            tmp[list.length] = literal;
+            return tmp;
+        }
+
+        @Override
+        int[]firstOccurrences(byte[]bytes, int p, int end) {
+            int[]first = notFound(numLiterals);
+            int pending = this.pending;
+            final int[]classes = this.classes;
+            final int[]delta = this.delta;
+            final int[][]outputs = this.outputs;
+            final int stride = this.stride;
+            int state = 0;
+            for (int s = p; s < end; s++) {
+                state = delta[state * stride + classes[bytes[s] & 0xff]];
+                int[]out = outputs[state];
+                if (out != null) {
+                    for (int literal : out) {
+                        if (first[literal] == NOT_FOUND) {
+                            first[literal] = s + 1 - lengths[literal];
+                            if (--pending == 0) return first;
+                        }
+                    }
+                }
+            }
+            return first;
+        }
+
+        @Override
+        int firstStart(byte[]bytes, int p, int end, int range) {
+            final int[]classes = this.classes;
+            final int[]delta = this.delta;
+            final int[][]outputs = this.outputs;
+            final int stride = this.stride;
+            int best = range;
+            int state = 0;
+            for (int s = p; s < end && s + 1 - maxLength < best; s++) {
+                state = delta[state * stride + classes[bytes[s] & 0xff]];
+                int[]out = outputs[state];
+                if (out != null) {
+                    for (int literal : out) {
+                        int start = s + 1 - lengths[literal];
+                        if (start < best) best = start;
+                    }
+                }
+            }
+            return best < range ? best : NOT_FOUND;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+/**
+ * Work done by one search or match call of a {@link Matcher}, handed to the {@link Listener} of the matcher when
+ * the call returns. Counting is compiled in with joni.metrics (off by default) and only done for matchers with a
+ * listener. The instance is reused by the matcher, a listener has to copy what it keeps.
+ */
+public final class MatchMetrics {
+    public interface Listener {
+        void report(Regex regex, MatchMetrics metrics);
+    }
+
+    long bytesScanned;      // by the Search.Forward of the optimizer
+    long matchAttempts;     // start positions tried
+    long opcodes;           // byte code instructions run
+    long pushes;            // backtrack stack entries
+    long pops;              // failures resumed from the backtrack stack
+    int maxStackDepth;
+    int result;
+    boolean timedOut, interrupted, retryLimitExceeded;
+
+    MatchMetrics() {
+    }
+
+    void clear() {
+        bytesScanned = matchAttempts = opcodes = pushes = pops = 0;
+        maxStackDepth = 0;
+        result = Matcher.FAILED;
+        timedOut = interrupted = retryLimitExceeded = false;
+    }
+
+    final void pushed(int depth) {
+        pushes++;
+        if (depth > maxStackDepth) maxStackDepth = depth;
+    }
+
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    public long getMatchAttempts() {
+        return matchAttempts;
+    }
+
+    /**
+     * Byte code instructions run, 0 when the matcher ran on the automaton.
+     */
+    public long getOpcodes() {
+        return opcodes;
+    }
+
+    public long getPushes() {
+        return pushes;
+    }
+
+    public long getPops() {
+        return pops;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * What the call returned, or would have returned had it not thrown.
+     */
+    public int getResult() {
+        return result;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    public boolean isRetryLimitExceeded() {
+        return retryLimitExceeded;
+    }
+
+    @Override
+    public String toString() {
+        return "result: " + result +
+            ", bytes scanned: " + bytesScanned +
+            ", match attempts: " + matchAttempts +
+            ", opcodes: " + opcodes +
+            ", pushes: " + pushes +
+            ", pops: " + pops +
+            ", max stack depth: " + maxStackDepth +
+            (timedOut ? ", timed out" : "") +
+            (interrupted ? ", interrupted" : "") +
+            (retryLimitExceeded ? ", retry limit exceeded" : "");
+    }
+}
@@ -22,25 +22,40 @@ package org.joni;
 
 import static org.joni.Option.isFindLongest;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
 import org.jcodings.Encoding;
 import org.jcodings.IntHolder;
 import org.jcodings.constants.CharacterType;
 import org.jcodings.specific.ASCIIEncoding;
 import org.joni.constants.internal.AnchorType;
+import org.joni.exception.RetryLimitException;
 import org.joni.exception.TimeoutException;
 
 public abstract class Matcher extends IntHolder {
     static final InterruptedException INTERRUPTED_EXCEPTION = new InterruptedException();
     static final InterruptedException TIMEOUT_EXCEPTION = new TimeoutException();
+    static final InterruptedException RETRY_LIMIT_EXCEPTION = new RetryLimitException();
     public static final int FAILED = -1;
     public static final int INTERRUPTED = -2;
+    public static final int RETRY_LIMIT_EXCEEDED = -3;
+
+    public interface Callback {
+        void match(Matcher matcher, int begin, int end);
+    }
 
     protected final Regex regex;
     protected final Encoding enc;
 
-    protected final byte[]bytes;
-    protected final int str;
-    protected final int end;
+    protected byte[]bytes;
+    protected int str;
+    protected int end;
 
     protected int msaStart;
     protected int msaOptions;
@@ -51,6 +66,10 @@ public abstract class Matcher extends IntHolder {
 
     protected int msaBegin;
     protected int msaEnd;
+    protected int msaMatchStart;    // where the last match found without a region started, before any \K
+
+    boolean lazyRegion;             // groups are found when asked for, see Regex.matcherLazyRegion
+    private Matcher capturing;
 
     protected long timeout;  // nanoseconds
 
@@ -58,6 +77,13 @@ public abstract class Matcher extends IntHolder {
     // which will cheapen how often we look but also it should be granular enough to not matter).
     protected long startTime;
 
+    protected long retryLimitInMatch;   // backtracks allowed in a match attempt, 0 for no limit
+    protected long retryLimitInSearch;  // backtracks allowed in a search or match call, 0 for no limit
+    protected long retries;             // backtracks since the call started
+
+    private MatchMetrics.Listener matchListener;
+    MatchMetrics metrics;               // counts of the current call, null without a listener
+
     Matcher(Regex regex, Region region, byte[]bytes, int p, int end) {
         this(regex, region, bytes, p, end, -1);
     }
@@ -72,6 +98,9 @@ public abstract class Matcher extends IntHolder {
         this.end = end;
         this.msaRegion = region;
         this.timeout = timeout;
+        this.retryLimitInMatch = regex.retryLimitInMatch;
+        this.retryLimitInSearch = regex.retryLimitInSearch;
+        if (Config.USE_METRICS && regex.matchListener != null) setMatchListener(regex.matchListener);
     }
 
     // main matching method
@@ -87,7 +116,37 @@ public abstract class Matcher extends IntHolder {
     }
 
     public final Region getEagerRegion() {
-        return msaRegion != null ? msaRegion : Region.newRegion(msaBegin, msaEnd);
+        if (msaRegion != null) return msaRegion;
+        return lazyRegion ? captureRegion() : Region.newRegion(msaBegin, msaEnd);
+    }
+
+    // matches again where the last match started, this time keeping the groups
+    private Region captureRegion() {
+        Matcher m = capturing;
+        if (m == null) {
+            capturing = m = regex.factory.create(regex, Region.newRegion(regex.numMem + 1), bytes, str, end);
+            if (Config.USE_METRICS) m.setMatchListener(null);
+        } else {
+            m.reset(bytes, str, end);
+        }
+        if (m.match(str + msaMatchStart, end, msaOptions) >= 0) return m.msaRegion;
+        return Region.newRegion(msaBegin, msaEnd);
+    }
+
+    public final Matcher reset(byte[]bytes) {
+        return reset(bytes, 0, bytes.length);
+    }
+
+    // retarget at a new subject, the region is cleared in place so that a matcher (and its stacks) can be reused per thread
+    public Matcher reset(byte[]bytes, int p, int end) {
+        this.bytes = bytes;
+        this.str = p;
+        this.end = end;
+        msaStart = msaGpos = 0;
+        msaBegin = msaEnd = 0;
+        msaBestLen = msaBestS = 0;
+        if (msaRegion != null) msaRegion.clear();
+        return this;
     }
 
     public final int getBegin() {
@@ -109,7 +168,7 @@ public abstract class Matcher extends IntHolder {
         try {
             return matchCommon(at, range, option, false);
         } catch (InterruptedException ex) {
-            return INTERRUPTED;
+            return ex == RETRY_LIMIT_EXCEPTION ? RETRY_LIMIT_EXCEEDED : INTERRUPTED;
         }
     }
 
@@ -118,7 +177,20 @@ public abstract class Matcher extends IntHolder {
     }
 
     private final int matchCommon(int at, int range, int option, boolean interrupt) throws InterruptedException {
+        if (Config.USE_METRICS && metrics != null) {
+            metrics.clear();
+            try {
+                return report(matchRange(at, range, option, interrupt));
+            } catch (InterruptedException ex) {
+                throw report(ex);
+            }
+        }
+        return matchRange(at, range, option, interrupt);
+    }
+
+    private final int matchRange(int at, int range, int option, boolean interrupt) throws InterruptedException {
         msaInit(option, at, at);
+        retries = 0;
 
         if (Config.USE_CEC) {
             int offset = at = str;
@@ -126,6 +198,7 @@ public abstract class Matcher extends IntHolder {
         } // USE_COMBINATION_EXPLOSION_CHECK
 
         int prev = enc.prevCharHead(bytes, str, at, end);
+        if (Config.USE_METRICS && metrics != null) metrics.matchAttempts++;
 
         if (Config.USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE) {
             return matchAt(end /*range*/, at, prev, interrupt);
@@ -152,7 +225,7 @@ public abstract class Matcher extends IntHolder {
 
         retry:while (true) {
             if (Config.DEBUG_SEARCH) debugSearch(regex.forward.getName(), p, end, range);
-            p = regex.forward.search(this, bytes, p, end, range);
+            p = forwardSearch(p, range);
 
             if (p != -1 && p < range) {
                 if (p - regex.dMin < s) {
@@ -288,8 +361,15 @@ public abstract class Matcher extends IntHolder {
         } // while
     }
 
+    private int forwardSearch(int p, int range) {
+        int q = regex.forward.search(this, bytes, p, end, range);
+        if (Config.USE_METRICS && metrics != null) metrics.bytesScanned += (q == -1 ? range : q) - p;
+        return q;
+    }
+
     // MATCH_AND_RETURN_CHECK
     private boolean matchCheck(int upperRange, int s, int prev, boolean interrupt) throws InterruptedException {
+        if (Config.USE_METRICS && metrics != null) metrics.matchAttempts++;
         if (Config.USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE) {
             if (Config.USE_FIND_LONGEST_SEARCH_ALL_OF_RANGE) {
                 //range = upperRange;
@@ -314,11 +394,124 @@ public abstract class Matcher extends IntHolder {
         return false;
     }
 
+    // first position from s up to range the optimizer lets a match start at (value is its previous char head when it moved), FAILED if none
+    final int forwardCandidate(int s, int range) {
+        if (regex.forward == null || regex.dMax == MinMaxLen.INFINITE_DISTANCE) return s;
+        if ((end - s) < regex.thresholdLength) return FAILED;
+        int schRange = range + regex.dMax;
+        if (schRange > end) schRange = end;
+        if (!forwardSearchRange(bytes, str, end, s, schRange, this)) return FAILED;
+        return s < low ? low : s;
+    }
+
+    private int[]reverseStarts;
+
+    // returns the first position from s up to range a match starts at, or FAILED, trying only the starts the reversed
+    // prefix reaches from the next occurrence of the exact string, so that every byte is scanned backwards at most once
+    private int reverseSuffixSearch(int upperRange, int s, int range, boolean interrupt) throws InterruptedException {
+        while (s <= range) {
+            int p = forwardSearch(s, end);
+            if (p == -1) return FAILED;
+
+            int n = reverseStarts(s, p);
+            if (n == -1) { // no DFA, no match can span the occurrence though
+                for (int x = s; x <= p && x <= range; x += enc.length(bytes, x, end)) {
+                    if (matchCheck(upperRange, x, prevOf(x), interrupt)) return x;
+                }
+            } else {
+                while (n > 0) {
+                    int x = reverseStarts[--n];
+                    if (x > range) break;
+                    if (matchCheck(upperRange, x, prevOf(x), interrupt)) return x;
+                }
+            }
+            s = p + enc.length(bytes, p, end);
+        }
+        return FAILED;
+    }
+
+    // positions from p down to low the reversed prefix accepts at in descending order, -1 if its DFA gives up
+    private int reverseStarts(int low, int p) {
+        final Automaton reverse = regex.reversePrefix;
+        Automaton.State st = reverse.initialState();
+        int n = 0;
+        int s = p;
+        while (st != null) {
+            if (st.match) {
+                if (reverseStarts == null) {
+                    reverseStarts = new int[16];
+                } else if (n == reverseStarts.length) {
+                    reverseStarts = Arrays.copyOf(reverseStarts, n << 1);
+                }
+                reverseStarts[n++] = s;
+            }
+            if (s <= low || st.pcs.length == 0) return n;
+            int q = enc.prevCharHead(bytes, low, s, end);
+            st = reverse.step(st, bytes, q, s - q, end, end, false);
+            s = q;
+        }
+        return -1;
+    }
+
+    // returns the last position from s down to range a match starts at, or FAILED, trying only the positions the
+    // reversed pattern accepts at when run backwards from the last position a match could end at
+    private int reverseSearchBackward(int upperRange, int s, int range, boolean interrupt) throws InterruptedException {
+        final Automaton reverse = regex.reverse;
+        int x = Config.USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE ? upperRange : end;
+        if (regex.maxMatchLength != MinMaxLen.INFINITE_DISTANCE && x - s > regex.maxMatchLength) {
+            x = enc.leftAdjustCharHead(bytes, str, s + regex.maxMatchLength, end);
+        }
+
+        Automaton.State st = reverse.initialState();
+        while (st != null) {
+            if (x <= s) {
+                if (st.match && matchCheck(upperRange, x, enc.prevCharHead(bytes, str, x, end), interrupt)) return x;
+                if (x <= range) return FAILED;
+            }
+            if (x <= str) return FAILED;
+            int q = enc.prevCharHead(bytes, str, x, end);
+            st = reverse.step(st, bytes, q, x - q, end, end, true);
+            x = q;
+        }
+
+        // the DFA gave up, positions above x are done with
+        s = Math.min(s, x);
+        do {
+            int prev = enc.prevCharHead(bytes, str, s, end);
+            if (matchCheck(upperRange, s, prev, interrupt)) return s;
+            s = prev;
+        } while (s >= range);
+        return FAILED;
+    }
+
+    private int prevOf(int s) {
+        return s > str ? enc.prevCharHead(bytes, str, s, end) : 0;
+    }
+
+    // machines which try all the start positions in a single pass only need the first candidate from the optimizer
+    boolean isOnePass() {
+        return false;
+    }
+
+    // returns the first position from s up to range a match starts at, or FAILED
+    int scanForward(int upperRange, int s, int prev, int range, boolean interrupt) throws InterruptedException {
+        do {
+            if (matchCheck(upperRange, s, prev, interrupt)) return s;
+            prev = s;
+            s += enc.length(bytes, s, end);
+        } while (s < range);
+
+        if (s == range) { /* because empty match with /$/. */
+            if (matchCheck(upperRange, s, prev, interrupt)) return s;
+        }
+        return FAILED;
+    }
+
     public final int search(int start, int range, int option) {
         try {
             return searchCommon(start, start, range, option, false);
         } catch (InterruptedException ex) {
-            return INTERRUPTED;
+            return ex == RETRY_LIMIT_EXCEPTION ? RETRY_LIMIT_EXCEEDED : INTERRUPTED;
         }
     }
 
@@ -326,7 +519,7 @@ public abstract class Matcher extends IntHolder {
         try {
             return searchCommon(gpos, start, range, option, false);
         } catch (InterruptedException ex) {
-            return INTERRUPTED;
+            return ex == RETRY_LIMIT_EXCEPTION ? RETRY_LIMIT_EXCEEDED : INTERRUPTED;
         }
     }
 
@@ -338,8 +531,150 @@ public abstract class Matcher extends IntHolder {
         return searchCommon(gpos, start, range, option, true);
     }
 
+    /**
+     * Reports each non-overlapping match of start..range in turn, like search its positions are relative to
+     * the subject start. A search resumes at the end of the previous match, one character past it when that
+     * match was empty. The region, if any, is reused and holds the groups of the match being reported.
+     * Returns the number of matches, or INTERRUPTED or RETRY_LIMIT_EXCEEDED when a search was cut short.
+     */
+    public final int scan(int start, int range, int option, Callback callback) {
+        if (range < start) throw new IllegalArgumentException("backward range: " + start + ".." + range);
+        int n = 0;
+        while (start <= range) {
+            int s = search(start, range, option);
+            if (s < 0) return s == FAILED ? n : s;
+            n++;
+            callback.match(this, s, msaEnd);
+            start = nextStart(s, msaEnd, range);
+        }
+        return n;
+    }
+
+    /**
+     * The matches scan would report, as a stream of begin and end pairs. The region holds the groups of a
+     * match until the begin of the next one is taken. A search cut short raises an IllegalStateException.
+     */
+    public final IntStream findAll(int start, int range, int option) {
+        return pairs(new Pairs(start, range, option, false));
+    }
+
+    /**
+     * The pieces of start..range between matches, as a stream of begin and end pairs. An empty match right
+     * after the previous split point does not split, the last piece is always included even when empty.
+     */
+    public final IntStream split(int start, int range, int option) {
+        return pairs(new Pairs(start, range, option, true));
+    }
+
+    private static IntStream pairs(Pairs pairs) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(pairs, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // absolute start of the search following a match
+    final int nextStart(int begin, int e, int range) {
+        int p = str + e;
+        if (e > begin) return p;
+        if (p >= range) return range + 1;
+        int n = enc.length(bytes, p, end);
+        return p + (n <= 0 ? 1 : n);
+    }
+
+    private final class Pairs implements PrimitiveIterator.OfInt {
+        private final int range, option;
+        private final boolean split;
+        private int start;
+        private int last;           // end of the previous split point
+        private int pairBegin, pairEnd;
+        private int state;          // 0: search, 1: begin pending, 2: end pending, 3: done
+        private boolean finished;   // no more searches
+
+        Pairs(int start, int range, int option, boolean split) {
+            if (range < start) throw new IllegalArgumentException("backward range: " + start + ".." + range);
+            this.start = start;
+            this.range = range;
+            this.option = option;
+            this.split = split;
+            this.last = start - str;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (state == 0) {
+                int s = start <= range ? search(start, range, option) : FAILED;
+                if (s == FAILED) {
+                    finished = true;
+                    if (split) {
+                        set(last, Math.max(last, range - str));
+                    } else {
+                        state = 3;
+                    }
+                } else if (s < 0) {
+                    state = 3;
+                    throw new IllegalStateException(s == RETRY_LIMIT_EXCEEDED ? "retry limit exceeded" : "search interrupted");
+                } else {
+                    start = nextStart(s, msaEnd, range);
+                    if (!split) {
+                        set(s, msaEnd);
+                    } else if (s < msaEnd || s > last) {
+                        set(last, s);
+                        last = msaEnd;
+                    }
+                }
+            }
+            return state != 3;
+        }
+
+        private void set(int begin, int end) {
+            pairBegin = begin;
+            pairEnd = end;
+            state = 1;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (state == 1) {
+                state = 2;
+                return pairBegin;
+            }
+            state = finished ? 3 : 0;
+            return pairEnd;
+        }
+    }
+
     private final int searchCommon(int gpos, int start, int range, int option, boolean interrupt) throws InterruptedException {
+        if (Config.USE_METRICS && metrics != null) {
+            metrics.clear();
+            try {
+                return report(searchRange(gpos, start, range, option, interrupt));
+            } catch (InterruptedException ex) {
+                throw report(ex);
+            }
+        }
+        return searchRange(gpos, start, range, option, interrupt);
+    }
+
+    private int report(int result) {
+        metrics.result = result;
+        matchListener.report(regex, metrics);
+        return result;
+    }
+
+    private InterruptedException report(InterruptedException ex) {
+        if (ex == RETRY_LIMIT_EXCEPTION) {
+            metrics.retryLimitExceeded = true;
+            metrics.result = RETRY_LIMIT_EXCEEDED;
+        } else {
+            if (ex == TIMEOUT_EXCEPTION) metrics.timedOut = true; else metrics.interrupted = true;
+            metrics.result = INTERRUPTED;
+        }
+        matchListener.report(regex, metrics);
+        return ex;
+    }
+
+    private final int searchRange(int gpos, int start, int range, int option, boolean interrupt) throws InterruptedException {
         if (timeout != -1) startTime = System.nanoTime();
+        retries = 0;
         int s, prev;
         int origStart = start;
         int origRange = range;
@@ -459,7 +794,14 @@ public abstract class Matcher extends IntHolder {
                 }
                 if ((end - start) < regex.thresholdLength) return mismatch();
 
-                if (regex.dMax != MinMaxLen.INFINITE_DISTANCE) {
+                if (regex.dMax != MinMaxLen.INFINITE_DISTANCE && isOnePass()) {
+                    /* only the first candidate is needed, the scan below covers all the later ones */
+                    if (!forwardSearchRange(bytes, str, end, s, schRange, this)) return mismatch(); // low, high, lowPrev
+                    if (s < low) {
+                        s = low;
+                        prev = value;
+                    }
+                } else if (regex.dMax != MinMaxLen.INFINITE_DISTANCE) {
                     do {
                         if (!forwardSearchRange(bytes, str, end, s, schRange, this)) return mismatch(); // low, high, lowPrev
                         if (s < low) {
@@ -477,7 +819,7 @@ public abstract class Matcher extends IntHolder {
                 } else { /* check only. */
                     if (!forwardSearchRange(bytes, str, end, s, schRange, null)) return mismatch();
 
-                    if ((regex.anchor & AnchorType.ANYCHAR_STAR) != 0) {
+                    if ((regex.anchor & AnchorType.ANYCHAR_STAR) != 0 && !isOnePass()) {
                         do {
                             if (matchCheck(origRange, s, prev, interrupt)) return match(s);
                             prev = s;
@@ -492,18 +834,16 @@ public abstract class Matcher extends IntHolder {
                         } while (s < range);
                         return mismatch();
                     }
+
+                    if (regex.reversePrefix != null && !isOnePass()) {
+                        s = reverseSuffixSearch(origRange, s, range, interrupt);
+                        return s != FAILED ? match(s) : mismatch();
+                    }
                 }
             }
 
-            do {
-                if (matchCheck(origRange, s, prev, interrupt)) return match(s);
-                prev = s;
-                s += enc.length(bytes, s, end);
-            } while (s < range);
-
-            if (s == range) { /* because empty match with /$/. */
-                if (matchCheck(origRange, s, prev, interrupt)) return match(s);
-            }
+            s = scanForward(origRange, s, prev, range, interrupt);
+            if (s != FAILED) return match(s);
         } else { /* backward search */
             if (Config.USE_MATCH_RANGE_MUST_BE_INSIDE_OF_SPECIFIED_RANGE) {
                 if (origStart < end) {
@@ -511,7 +851,8 @@ public abstract class Matcher extends IntHolder {
                 }
             }
 
-            if (regex.backward != null) {
+            // a map stops at too many positions to be worth it next to the reversed pattern
+            if (regex.backward != null && (regex.reverse == null || regex.exact != null)) {
                 int adjrange;
                 if (range < end) {
                     adjrange = enc.leftAdjustCharHead(bytes, str, range, end);
@@ -524,7 +865,7 @@ public abstract class Matcher extends IntHolder {
                         if (schStart > end) schStart = end;
                         if (!backwardSearchRange(bytes, str, end, schStart, range, adjrange)) return mismatch(); // low, high
                         if (s > high) s = high;
-                        while (s != -1 && s >= low) {
+                        while (s != -1 && s >= low && s >= range) {
                             prev = enc.prevCharHead(bytes, str, s, end);
                             if (matchCheck(origStart, s, prev, interrupt)) return match(s);
                             s = prev;
@@ -551,6 +892,11 @@ public abstract class Matcher extends IntHolder {
                 }
             }
 
+            if (regex.reverse != null) {
+                s = reverseSearchBackward(origStart, s, range, interrupt);
+                return s != FAILED ? match(s) : mismatch();
+            }
+
             do {
                 prev = enc.prevCharHead(bytes, str, s, end);
                 if (matchCheck(origStart, s, prev, interrupt)) return match(s);
@@ -657,7 +1003,39 @@ public abstract class Matcher extends IntHolder {
         Config.log.println(name + ": text: " + textP + ", text_end: " + textEnd + ", text_range: " + textRange);
     }
 
+    /**
+     * Reports the work of each following search or match call to listener, null to stop. Takes precedence over
+     * the listener of the regex. Throws an IllegalStateException when metrics are disabled by joni.metrics.
+     */
+    public void setMatchListener(MatchMetrics.Listener listener) {
+        if (listener != null && !Config.USE_METRICS) throw new IllegalStateException("metrics disabled by joni.metrics");
+        matchListener = listener;
+        if (listener == null) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new MatchMetrics();
+        }
+    }
+
     public void setTimeout(long timeout) {
         this.timeout = timeout;
     }
+
+    /**
+     * Limits the backtracks of each match attempt, a search makes one at every start position it tries. Exceeding
+     * the limit makes search and match return {@link #RETRY_LIMIT_EXCEEDED} and their interruptible variants throw
+     * a {@link RetryLimitException}. Unlike a timeout the outcome does not depend on machine load. 0 for no limit.
+     */
+    public void setRetryLimitInMatch(long limit) {
+        if (limit < 0) throw new IllegalArgumentException("negative retry limit: " + limit);
+        this.retryLimitInMatch = limit;
+    }
+
+    /**
+     * Limits the backtracks of a whole search or match call, 0 for no limit.
+     */
+    public void setRetryLimitInSearch(long limit) {
+        if (limit < 0) throw new IllegalArgumentException("negative retry limit: " + limit);
+        this.retryLimitInSearch = limit;
+    }
 }
@@ -34,4 +34,10 @@ abstract class MatcherFactory {
             return new ByteCodeMachine(regex, region, bytes, p, end);
         }
     };
+
+    // the automaton for regexes that would backtrack, stackless byte code is already linear per start position
+    static MatcherFactory of(Regex regex) {
+        if (regex.automaton != null && regex.requireStack) return AutomatonMachine.FACTORY;
+        return DEFAULT;
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+/**
+ * Transitions of a lazy DFA state over characters of two or three bytes, the single byte ones live in plain arrays.
+ * Open addressing on nonzero keys, an entry is written value first and never changes afterwards so lookups
+ * need no lock: one racing with a put may miss and the caller steps the slow way.
+ */
+final class MbTable<S> {
+    private final int[]keys;
+    private final Object[]values;
+    private int size;
+
+    MbTable(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    // key of the character of n bytes at s, 0 when not cached (longer characters)
+    static int key(byte[]bytes, int s, int n, boolean start) {
+        if (n > 3) return 0;
+        int c = bytes[s] & 0xff;
+        for (int i = 1; i < n; i++) c = c << 8 | (bytes[s + i] & 0xff);
+        return (start ? 1 << 27 : 0) | n << 24 | c;
+    }
+
+    @SuppressWarnings("unchecked")
+    S get(int key) {
+        int mask = keys.length - 1;
+        for (int i = (key * 0x9e3779b9) >>> 16 & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return (S)values[i];
+            if (k == 0) return null;
+        }
+    }
+
+    // callers serialize puts, the table to publish is returned since it may have been grown
+    MbTable<S> put(int key, S value) {
+        MbTable<S> table = size << 1 >= keys.length ? grow() : this;
+        table.add(key, value);
+        return table;
+    }
+
+    private void add(int key, Object value) {
+        int mask = keys.length - 1;
+        int i = (key * 0x9e3779b9) >>> 16 & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) return;
+            i = (i + 1) & mask;
+        }
+        values[i] = value;
+        keys[i] = key;
+        size++;
+    }
+
+    private MbTable<S> grow() {
+        MbTable<S> table = new MbTable<S>(keys.length << 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) table.add(keys[i], values[i]);
+        }
+        return table;
+    }
+}
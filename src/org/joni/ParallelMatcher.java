@@ -0,0 +1,208 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds all the matches of a large input using several threads, with the result of a sequential
+ * {@link Matcher#findAll(int, int, int)}.
+ *
+ * The input is cut into chunks at character boundaries and each chunk is searched on its own, as if the
+ * previous match had ended at its start. The results are then joined in order: where a match runs over a
+ * chunk boundary, or an empty match steps over one, the next chunk is searched again from the actual
+ * position until a match it already found is reached, from there on both agree. Patterns using \G are
+ * searched sequentially.
+ */
+public final class ParallelMatcher {
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final Regex regex;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelMatcher(Regex regex) {
+        this(regex, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Chunks are at least chunkSize bytes long, larger when the input would need more than a few per thread.
+     */
+    public ParallelMatcher(Regex regex, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        this.regex = regex;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public Regex getRegex() {
+        return regex;
+    }
+
+    public int[] findAll(byte[]bytes) {
+        return findAll(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Begin and end pairs of the matches in p..end, relative to p. A search cut short raises an IllegalStateException.
+     */
+    public int[] findAll(byte[]bytes, int p, int end) {
+        int len = end - p;
+        int size = Math.max(chunkSize, len / (pool.getParallelism() * 4));
+        if (regex.beginPosition || len <= size) {
+            return regex.matcherNoRegion(bytes, p, end).findAll(p, end, Option.NONE).toArray();
+        }
+
+        int n = (len + size - 1) / size;
+        int[]starts = new int[n + 1];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int s = i == 0 ? 0 : regex.enc.leftAdjustCharHead(bytes, p, p + i * size, end) - p;
+            if (count == 0 || s > starts[count - 1]) starts[count++] = s;
+        }
+        starts[count] = len;
+
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<ForkJoinTask<int[]>>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(pool.submit(new Chunk(regex, bytes, p, end, starts[i], starts[i + 1], i == count - 1)));
+        }
+
+        try {
+            return join(bytes, p, end, starts, tasks);
+        } finally {
+            for (ForkJoinTask<int[]> task : tasks) task.cancel(false);
+        }
+    }
+
+    private int[] join(byte[]bytes, int p, int end, int[]starts, List<ForkJoinTask<int[]>> tasks) {
+        int len = end - p;
+        Matcher matcher = regex.matcherNoRegion(bytes, p, end);
+        Pairs result = new Pairs();
+        int pos = 0; // where the sequential search would continue
+
+        for (int i = 0; i < tasks.size(); i++) {
+            int start = starts[i], limit = starts[i + 1];
+            boolean last = i == tasks.size() - 1;
+            if (pos > len || (pos >= limit && !last)) continue;
+            int[]found = tasks.get(i).join();
+            int k = 0;
+            if (pos != start) {
+                k = -1;
+                while (pos <= len) {
+                    int s = matcher.search(p + pos, p + limit, Option.NONE);
+                    if (s == Matcher.FAILED || (s >= limit && !last)) break;
+                    if (s < 0) throw new IllegalStateException(s == Matcher.RETRY_LIMIT_EXCEEDED ? "retry limit exceeded" : "search interrupted");
+                    int e = matcher.getEnd();
+                    result.add(s, e);
+                    pos = matcher.nextStart(s, e, end) - p;
+                    int idx = indexOf(found, s);
+                    if (idx != -1) {
+                        k = idx + 2;
+                        break;
+                    }
+                    if (pos >= limit && !last) break;
+                }
+                if (k == -1) {
+                    if (pos < limit) pos = limit;
+                    continue;
+                }
+            }
+            for (; k < found.length; k += 2) result.add(found[k], found[k + 1]);
+            if (found.length > 0 && k > 0) {
+                pos = Math.max(pos, matcher.nextStart(found[found.length - 2], found[found.length - 1], end) - p);
+            }
+            // the chunk had no other match from here
+            if (pos < limit) pos = limit;
+        }
+        return result.toArray();
+    }
+
+    private static int indexOf(int[]pairs, int begin) {
+        int lo = 0, hi = pairs.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int b = pairs[mid << 1];
+            if (b < begin) {
+                lo = mid + 1;
+            } else if (b > begin) {
+                hi = mid - 1;
+            } else {
+                return mid << 1;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Chunk extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final Regex regex;
+        private final byte[]bytes;
+        private final int p, end, start, limit;
+        private final boolean last;
+
+        Chunk(Regex regex, byte[]bytes, int p, int end, int start, int limit, boolean last) {
+            this.regex = regex;
+            this.bytes = bytes;
+            this.p = p;
+            this.end = end;
+            this.start = start;
+            this.limit = limit;
+            this.last = last;
+        }
+
+        @Override
+        protected int[] compute() {
+            int[]pairs = regex.matcherNoRegion(bytes, p, end).findAll(p + start, p + limit, Option.NONE).toArray();
+            if (last) return pairs;
+            // matches starting at the limit belong to the next chunk
+            int n = pairs.length;
+            while (n > 0 && pairs[n - 2] >= limit) n -= 2;
+            if (n == pairs.length) return pairs;
+            int[]tmp = new int[n];
+            System.arraycopy(pairs, 0, tmp, 0, n);
+            return tmp;
+        }
+    }
+
+    private static final class Pairs {
+        private int[]pairs = new int[64];
+        private int len;
+
+        void add(int begin, int end) {
+            if (len + 2 > pairs.length) {
+                int[]tmp = new int[pairs.length << 1];
+                System.arraycopy(pairs, 0, tmp, 0, len);
+                pairs = tmp;
+            }
+            pairs[len++] = begin;
+            pairs[len++] = end;
+        }
+
+        int[] toArray() {
+            int[]result = new int[len];
+            System.arraycopy(pairs, 0, result, 0, len);
+            return result;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import static org.joni.Option.isCaptureGroup;
 import static org.joni.Option.isDontCaptureGroup;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 
@@ -40,6 +41,8 @@ import org.joni.exception.InternalException;
 import org.joni.exception.ValueException;
 
 public final class Regex {
+    public static final int COMPLEXITY_EXPONENTIAL = -1;
+
     int[] code;             /* compiled pattern */
     int codeLength;
     boolean requireStack;
@@ -55,15 +58,31 @@ public final class Regex {
 
     int stackPopLevel;
 
+    int maxMatchLength;     /* max byte length of a match, INFINITE_DISTANCE if unbounded */
+    int lookAroundLength;   /* max bytes a look-ahead or look-behind reads past the match */
+    int backtrackComplexity;
+    boolean beginPosition;  /* \G, matches depend on where the search started */
+    int[]captureFreeCode;   /* code with capture opcodes turned into jumps, run by interpreting matchers without a region */
+    int[]altDispatch;       /* byte tables of ALT_DISPATCH, each followed by the lists of branches they point to */
+    int[]literalTries;      /* tries of LITERAL_TRIE, see ArrayCompiler.addLiteralTrie */
+    int[]memoIndex;         /* memo table row of each memoized branch, -2 - row inside look-arounds, -1 for others, null if none */
+    int memoRows;
+
     int[]repeatRangeLo;
     int[]repeatRangeHi;
 
     MatcherFactory factory;
+    Automaton automaton;    /* backtracking free program, when the pattern allows one */
+    Automaton reversePrefix; /* runs backwards over what precedes the exact string, see Analyser.setReversePrefix */
+    Automaton reverse;      /* the pattern stepped backwards for backward searches, accepts a superset of it */
 
     final Encoding enc;
     int options;
     int userOptions;
     Object userObject;
+    long retryLimitInMatch = Config.RETRY_LIMIT_IN_MATCH;
+    long retryLimitInSearch = Config.RETRY_LIMIT_IN_SEARCH;
+    MatchMetrics.Listener matchListener;
     final int caseFoldFlag;
 
     private BytesHash<NameEntry> nameTable; // named entries
@@ -80,10 +99,13 @@ public final class Regex {
     byte[]exact;
     int exactP;
     int exactEnd;
+    int exactRare;                          /* offset of the exact byte RARE_BYTE_FORWARD scans for */
 
     byte[]map;                              /* used as BM skip or char-map */
+    byte[]mapBytes;                         /* the bytes of a char-map with at most three, scanned for with ByteScan */
     int[]intMap;                            /* BM skip for exact_len > 255 */
     int[]intMapBackward;                    /* BM skip for backward search */
+    LiteralPrefilter literalSet;            /* strings of a leading literal alternation, see Analyser.setOptimizeLiteralSetInfo */
     int dMin;                               /* min-distance of exact or map */
     int dMax;                               /* max-distance of exact or map */
 
@@ -172,6 +194,13 @@ public final class Regex {
         new Analyser(this, syntax, bytes, p, end, warnings).compile();
     }
 
+    // a regex to be filled by RegexBundle
+    Regex(Encoding enc, int options, int caseFoldFlag) {
+        this.enc = enc;
+        this.options = options;
+        this.caseFoldFlag = caseFoldFlag;
+    }
+
     public Matcher matcher(byte[]bytes) {
         return matcher(bytes, 0, bytes.length);
     }
@@ -196,6 +225,30 @@ public final class Regex {
         return factory.create(this, null, bytes, p, end, timeout);
     }
 
+    public Matcher matcherLazyRegion(byte[]bytes) {
+        return matcherLazyRegion(bytes, 0, bytes.length);
+    }
+
+    /**
+     * A matcher which searches as {@link #matcherNoRegion(byte[], int, int)} does, skipping the work of keeping
+     * groups, and works them out by matching once more at the start of the last match when
+     * {@link Matcher#getEagerRegion()} asks for them. Patterns with {@code \G} get a matcher with a region.
+     */
+    public Matcher matcherLazyRegion(byte[]bytes, int p, int end) {
+        if (numMem == 0) return matcherNoRegion(bytes, p, end);
+        if (beginPosition) return matcher(bytes, p, end);
+        Matcher matcher = factory.create(this, null, bytes, p, end);
+        matcher.lazyRegion = true;
+        return matcher;
+    }
+
+    /**
+     * The maximum length in bytes of a match of this regex, or -1 if it is unbounded.
+     */
+    public int getMaxMatchLength() {
+        return maxMatchLength == MinMaxLen.INFINITE_DISTANCE ? -1 : maxMatchLength;
+    }
+
     public int numberOfCaptures() {
         return numMem;
     }
@@ -252,6 +305,13 @@ public final class Regex {
         e.addBackref(backRef);
     }
 
+    void namePut(byte[]name, int[]backRefs) {
+        if (nameTable == null) nameTable = new BytesHash<>();
+        NameEntry e = new NameEntry(name, 0, name.length);
+        for (int backRef : backRefs) e.addBackref(backRef);
+        nameTable.putDirect(name, 0, name.length, e);
+    }
+
     NameEntry nameToGroupNumbers(byte[]name, int nameP, int nameEnd) {
         return nameFind(name, nameP, nameEnd);
     }
@@ -392,7 +452,12 @@ public final class Regex {
             }
             backward = enc.toLowerCaseTable() != null ? Search.SLOW_IC_SB_BACKWARD : Search.SLOW_IC_BACKWARD;
         } else {
-            if (e.length >= 3 || (e.length >= 2 && allowReverse)) {
+            ByteFrequencies frequencies = ByteFrequencies.getDefault();
+            int rare = frequencies.rarest(exact, exactP, exactEnd);
+            if (e.length >= 2 && (enc.isSingleByte() || enc.isUTF8()) && frequencies.rank(exact[exactP + rare]) <= Config.RARE_BYTE_MAX_RANK) {
+                exactRare = rare;
+                forward = Search.RARE_BYTE_FORWARD;
+            } else if (e.length >= 3 || (e.length >= 2 && allowReverse)) {
                 if (!setupBMSkipMap(false)) {
                     forward = allowReverse ? Search.BM_FORWARD : Search.BM_NOT_REV_FORWARD;
                 } else {
@@ -415,6 +480,23 @@ public final class Regex {
     void setOptimizeMapInfo(OptMapInfo m) {
         map = m.map;
 
+        if (enc.isSingleByte() || enc.isUTF8()) { // utf-8 continuation bytes would need character stepping
+            byte[]bytes = new byte[3];
+            int n = 0;
+            for (int i = 0; i < Config.CHAR_TABLE_SIZE; i++) {
+                if (map[i] == 0) continue;
+                if (n == bytes.length || (!enc.isSingleByte() && (i & 0xc0) == 0x80)) {
+                    n = 0;
+                    break;
+                }
+                bytes[n++] = (byte)i;
+            }
+            if (n > 0) {
+                for (int i = n; i < bytes.length; i++) bytes[i] = bytes[0];
+                mapBytes = bytes;
+            }
+        }
+
         if (enc.isSingleByte()) {
             forward = Search.MAP_SB_FORWARD;
             backward = Search.MAP_SB_BACKWARD;
@@ -445,7 +527,8 @@ public final class Regex {
         subAnchor = 0;
 
         exact = null;
-        exactP = exactEnd = 0;
+        exactP = exactEnd = exactRare = 0;
+        mapBytes = null;
     }
 
     public String optimizeInfoToString() {
@@ -491,6 +574,33 @@ public final class Regex {
         return s;
     }
 
+    /**
+     * The literal every match contains as chosen by the optimizer, null when there is none.
+     * The bytes are case folded when {@link #isExactIgnoreCase()}.
+     */
+    public byte[] getExactString() {
+        return exact == null ? null : Arrays.copyOfRange(exact, exactP, exactEnd);
+    }
+
+    public boolean isExactIgnoreCase() {
+        return exact != null && (forward == Search.SLOW_IC_FORWARD || forward == Search.SLOW_IC_SB_FORWARD ||
+                                 forward == Search.BM_IC_FORWARD || forward == Search.BM_NOT_REV_IC_FORWARD);
+    }
+
+    /**
+     * Minimum distance from the start of a match to the exact string or char-map position.
+     */
+    public int getExactMinDistance() {
+        return dMin;
+    }
+
+    /**
+     * Maximum distance from the start of a match to the exact string or char-map position, Integer.MAX_VALUE when unbounded.
+     */
+    public int getExactMaxDistance() {
+        return dMax;
+    }
+
     public Encoding getEncoding() {
         return enc;
     }
@@ -515,7 +625,64 @@ public final class Regex {
         return userObject;
     }
 
+    /**
+     * Default backtrack limits of the matchers created afterwards, see {@link Matcher#setRetryLimitInMatch(long)}.
+     * They apply to every user of the regex, set them on each matcher for a regex shared through a {@link RegexCache}.
+     */
+    public void setRetryLimitInMatch(long limit) {
+        if (limit < 0) throw new IllegalArgumentException("negative retry limit: " + limit);
+        this.retryLimitInMatch = limit;
+    }
+
+    public long getRetryLimitInMatch() {
+        return retryLimitInMatch;
+    }
+
+    public void setRetryLimitInSearch(long limit) {
+        if (limit < 0) throw new IllegalArgumentException("negative retry limit: " + limit);
+        this.retryLimitInSearch = limit;
+    }
+
+    public long getRetryLimitInSearch() {
+        return retryLimitInSearch;
+    }
+
+    /**
+     * Default metrics listener of the matchers created afterwards, see {@link Matcher#setMatchListener(MatchMetrics.Listener)}.
+     * It hears from every user of the regex, set it on each matcher for a regex shared through a {@link RegexCache}.
+     */
+    public void setMatchListener(MatchMetrics.Listener listener) {
+        if (listener != null && !Config.USE_METRICS) throw new IllegalStateException("metrics disabled by joni.metrics");
+        this.matchListener = listener;
+    }
+
+    public MatchMetrics.Listener getMatchListener() {
+        return matchListener;
+    }
+
+    /**
+     * True when the bytecode needs no backtrack stack. An unanchored search still tries each start
+     * position, see hasAutomaton() for patterns searched in one pass.
+     */
     public boolean isLinear() {
         return !requireStack;
     }
+
+    /**
+     * True when the pattern needs backtracking but runs on the backtracking free automaton, which
+     * scans the whole search range in one pass.
+     */
+    public boolean hasAutomaton() {
+        return automaton != null && requireStack;
+    }
+
+    /**
+     * Estimated backtracking of a match attempt in the input length: 1 when linear, n when polynomial
+     * of degree n or COMPLEXITY_EXPONENTIAL. It bounds a single attempt, not a whole search: an unanchored
+     * search tries each start position and may add one degree. It may be too high but not too low.
+     * The automaton, see hasAutomaton(), memoization or a retry limit may still bound the time spent.
+     */
+    public int getBacktrackComplexity() {
+        return backtrackComplexity;
+    }
 }
@@ -0,0 +1,368 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import org.jcodings.Encoding;
+import org.jcodings.EncodingDB;
+import org.joni.constants.internal.OPCode;
+import org.joni.constants.internal.OPSize;
+import org.joni.exception.InternalException;
+
+/**
+ * Stores compiled regexes in a binary form that loads without parsing or compiling them again.
+ *
+ * A bundle starts with a format version, a hash of the instruction set and the configuration the regexes
+ * were compiled with. It only loads with the same opcodes and operand sizes and the same compile time
+ * settings, anything else raises an IOException.
+ * Settings only used while matching (retry limits, memoization thresholds) may differ.
+ */
+public final class RegexBundle {
+    private static final int MAGIC = 0x4a4f4e49; // "JONI"
+    private static final int VERSION = 1;
+    private static final int INSTRUCTION_SET = instructionSet();
+
+    private static final Search.Forward[]FORWARD = {
+        Search.SLOW_FORWARD, Search.SLOW_SB_FORWARD, Search.RARE_BYTE_FORWARD, Search.SLOW_IC_FORWARD, Search.SLOW_IC_SB_FORWARD,
+        Search.BM_FORWARD, Search.BM_IC_FORWARD, Search.BM_NOT_REV_FORWARD, Search.BM_NOT_REV_IC_FORWARD,
+        Search.MAP_FORWARD, Search.MAP_SB_FORWARD, Search.LITERAL_SET_FORWARD
+    };
+
+    private static final Search.Backward[]BACKWARD = {
+        Search.SLOW_BACKWARD, Search.SLOW_SB_BACKWARD, Search.SLOW_IC_BACKWARD, Search.SLOW_IC_SB_BACKWARD,
+        Search.BM_BACKWARD, Search.MAP_BACKWARD, Search.MAP_SB_BACKWARD
+    };
+
+    private RegexBundle() {
+    }
+
+    public static void writeAll(OutputStream out, Collection<Regex> regexes) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(INSTRUCTION_SET);
+        writeConfig(data);
+        data.writeInt(regexes.size());
+        for (Regex regex : regexes) write(data, regex);
+        data.flush();
+    }
+
+    public static Regex[] readAll(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("not a regex bundle");
+        int version = data.readInt();
+        if (version != VERSION) throw new IOException("unsupported regex bundle version: " + version);
+        if (data.readInt() != INSTRUCTION_SET) throw new IOException("regex bundle compiled for other byte code");
+        readConfig(data);
+        Regex[]regexes = new Regex[data.readInt()];
+        for (int i = 0; i < regexes.length; i++) regexes[i] = read(data);
+        return regexes;
+    }
+
+    /**
+     * Reads the bundle in the remaining bytes of a buffer, a memory mapped file for instance.
+     */
+    public static Regex[] readAll(ByteBuffer buffer) throws IOException {
+        return readAll(new BufferInput(buffer));
+    }
+
+    // the opcodes and operand sizes of the byte code and of the automaton by name
+    private static int instructionSet() {
+        int hash = 0;
+        for (Class<?> table : new Class<?>[] {OPCode.class, OPSize.class, Automaton.class}) {
+            Field[]fields = table.getDeclaredFields();
+            Arrays.sort(fields, new Comparator<Field>() {
+                public int compare(Field a, Field b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+            for (Field field : fields) {
+                if (field.getType() != int.class || !Modifier.isStatic(field.getModifiers())) continue;
+                try {
+                    hash = hash * 31 + field.getName().hashCode();
+                    hash = hash * 31 + field.getInt(null);
+                } catch (IllegalAccessException e) {
+                    throw new InternalException(e.getMessage());
+                }
+            }
+        }
+        return hash;
+    }
+
+    // settings that change what compiling a pattern produces
+    private static int[] config() {
+        boolean[]flags = {
+            Config.USE_NAMED_GROUP, Config.USE_SUBEXP_CALL, Config.USE_PERL_SUBEXP_CALL, Config.USE_BACKREF_WITH_LEVEL,
+            Config.USE_MONOMANIAC_CHECK_CAPTURES_IN_ENDLESS_REPEAT, Config.USE_NEWLINE_AT_END_OF_STRING_HAS_EMPTY_LINE,
+            Config.CASE_FOLD_IS_APPLIED_INSIDE_NEGATIVE_CCLASS, Config.USE_CAPTURE_HISTORY, Config.USE_VARIABLE_META_CHARS,
+            Config.USE_WORD_BEGIN_END, Config.USE_SUNDAY_QUICK_SEARCH, Config.USE_CEC, Config.USE_DYNAMIC_OPTION,
+            Config.USE_BYTE_MAP, Config.USE_INT_MAP_BACKWARD, Config.USE_OP_PUSH_OR_JUMP_EXACT, Config.USE_QTFR_PEEK_NEXT,
+            Config.USE_AUTOMATON, Config.USE_REVERSE_SUFFIX, Config.USE_REVERSE_SEARCH, Config.USE_ALT_DISPATCH, Config.USE_LITERAL_SET,
+            Config.USE_MEMOIZATION, Config.OPTIMIZE, Config.USE_STRING_TEMPLATES
+        };
+        int bits = 0;
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) bits |= 1 << i;
+        }
+        return new int[] {bits, Config.CHAR_TABLE_SIZE, Config.AUTOMATON_MAX_SIZE, Config.RARE_BYTE_MAX_RANK, Config.LITERAL_SET_MIN_LITERALS};
+    }
+
+    private static void writeConfig(DataOutput out) throws IOException {
+        writeInts(out, config());
+    }
+
+    private static void readConfig(DataInput in) throws IOException {
+        int[]config = readInts(in);
+        if (!Arrays.equals(config, config())) throw new IOException("regex bundle compiled with other settings");
+    }
+
+    private static void write(DataOutput out, Regex regex) throws IOException {
+        out.writeUTF(new String(regex.enc.getName(), "US-ASCII"));
+        out.writeInt(regex.options);
+        out.writeInt(regex.caseFoldFlag);
+        out.writeInt(regex.userOptions);
+
+        int[]code = new int[regex.codeLength];
+        System.arraycopy(regex.code, 0, code, 0, regex.codeLength);
+        writeInts(out, code);
+        out.writeBoolean(regex.requireStack);
+        out.writeInt(regex.numMem);
+        out.writeInt(regex.numRepeat);
+        out.writeInt(regex.numNullCheck);
+        out.writeInt(regex.numCombExpCheck);
+        out.writeInt(regex.numCall);
+        out.writeInt(regex.captureHistory);
+        out.writeInt(regex.btMemStart);
+        out.writeInt(regex.btMemEnd);
+        out.writeInt(regex.stackPopLevel);
+        out.writeInt(regex.maxMatchLength);
+        out.writeInt(regex.lookAroundLength);
+        out.writeInt(regex.backtrackComplexity);
+        out.writeBoolean(regex.beginPosition);
+        writeInts(out, regex.captureFreeCode);
+        writeInts(out, regex.altDispatch);
+        writeInts(out, regex.literalTries);
+        writeInts(out, regex.memoIndex);
+        out.writeInt(regex.memoRows);
+        writeInts(out, regex.repeatRangeLo);
+        writeInts(out, regex.repeatRangeHi);
+        if (regex.automaton != null) {
+            writeInts(out, regex.automaton.code);
+            out.writeInt(regex.automaton.numSlots);
+        } else {
+            writeInts(out, null);
+        }
+        writeInts(out, regex.reversePrefix == null ? null : regex.reversePrefix.code);
+        writeInts(out, regex.reverse == null ? null : regex.reverse.code);
+
+        out.writeInt(regex.numberOfNames());
+        for (Iterator<NameEntry> i = regex.namedBackrefIterator(); i.hasNext();) {
+            NameEntry e = i.next();
+            writeBytes(out, e.name, e.nameP, e.nameEnd);
+            writeInts(out, e.getBackRefs());
+        }
+
+        out.writeByte(indexOf(FORWARD, regex.forward));
+        out.writeByte(indexOf(BACKWARD, regex.backward));
+        out.writeInt(regex.thresholdLength);
+        out.writeInt(regex.anchor);
+        out.writeInt(regex.anchorDmin);
+        out.writeInt(regex.anchorDmax);
+        out.writeInt(regex.subAnchor);
+        if (regex.exact != null) {
+            writeBytes(out, regex.exact, regex.exactP, regex.exactEnd);
+        } else {
+            writeBytes(out, null, 0, 0);
+        }
+        out.writeInt(regex.exactRare);
+        writeBytes(out, regex.map);
+        writeBytes(out, regex.mapBytes);
+        writeInts(out, regex.intMap);
+        writeInts(out, regex.intMapBackward);
+        if (regex.literalSet != null) {
+            out.writeInt(regex.literalSet.numLiterals);
+            for (byte[]literal : regex.literalSet.literals) writeBytes(out, literal);
+        } else {
+            out.writeInt(-1);
+        }
+        out.writeInt(regex.dMin);
+        out.writeInt(regex.dMax);
+
+        out.writeInt(regex.templateNum);
+        for (int i = 0; i < regex.templateNum; i++) writeBytes(out, regex.templates[i]);
+    }
+
+    private static Regex read(DataInput in) throws IOException {
+        String name = in.readUTF();
+        EncodingDB.Entry entry = EncodingDB.getEncodings().get(name.getBytes("US-ASCII"));
+        if (entry == null) throw new IOException("unknown encoding: " + name);
+        Encoding enc = entry.getEncoding();
+        Regex regex = new Regex(enc, in.readInt(), in.readInt());
+        regex.userOptions = in.readInt();
+
+        regex.code = readInts(in);
+        regex.codeLength = regex.code.length;
+        regex.requireStack = in.readBoolean();
+        regex.numMem = in.readInt();
+        regex.numRepeat = in.readInt();
+        regex.numNullCheck = in.readInt();
+        regex.numCombExpCheck = in.readInt();
+        regex.numCall = in.readInt();
+        regex.captureHistory = in.readInt();
+        regex.btMemStart = in.readInt();
+        regex.btMemEnd = in.readInt();
+        regex.stackPopLevel = in.readInt();
+        regex.maxMatchLength = in.readInt();
+        regex.lookAroundLength = in.readInt();
+        regex.backtrackComplexity = in.readInt();
+        regex.beginPosition = in.readBoolean();
+        regex.captureFreeCode = readInts(in);
+        regex.altDispatch = readInts(in);
+        regex.literalTries = readInts(in);
+        regex.memoIndex = readInts(in);
+        regex.memoRows = in.readInt();
+        regex.repeatRangeLo = readInts(in);
+        regex.repeatRangeHi = readInts(in);
+        int[]automaton = readInts(in);
+        if (automaton != null) regex.automaton = new Automaton(regex, automaton, in.readInt());
+        int[]reversePrefix = readInts(in);
+        if (reversePrefix != null) regex.reversePrefix = Automaton.reversed(regex, reversePrefix);
+        int[]reverse = readInts(in);
+        if (reverse != null) regex.reverse = Automaton.reversed(regex, reverse);
+
+        int names = in.readInt();
+        for (int i = 0; i < names; i++) regex.namePut(readBytes(in), readInts(in));
+
+        int forward = in.readByte(), backward = in.readByte();
+        regex.forward = forward == -1 ? null : FORWARD[forward];
+        regex.backward = backward == -1 ? null : BACKWARD[backward];
+        regex.thresholdLength = in.readInt();
+        regex.anchor = in.readInt();
+        regex.anchorDmin = in.readInt();
+        regex.anchorDmax = in.readInt();
+        regex.subAnchor = in.readInt();
+        regex.exact = readBytes(in);
+        regex.exactP = 0;
+        regex.exactEnd = regex.exact == null ? 0 : regex.exact.length;
+        regex.exactRare = in.readInt();
+        regex.map = readBytes(in);
+        regex.mapBytes = readBytes(in);
+        regex.intMap = readInts(in);
+        regex.intMapBackward = readInts(in);
+        int numLiterals = in.readInt();
+        if (numLiterals != -1) {
+            byte[][]literals = new byte[numLiterals][];
+            for (int i = 0; i < numLiterals; i++) literals[i] = readBytes(in);
+            regex.literalSet = LiteralPrefilter.create(literals);
+        }
+        regex.dMin = in.readInt();
+        regex.dMax = in.readInt();
+
+        regex.templateNum = in.readInt();
+        if (regex.templateNum > 0) {
+            regex.templates = new byte[regex.templateNum][];
+            for (int i = 0; i < regex.templateNum; i++) regex.templates[i] = readBytes(in);
+        }
+
+        regex.factory = MatcherFactory.of(regex);
+        return regex;
+    }
+
+    private static <T> int indexOf(T[]table, T value) throws IOException {
+        if (value == null) return -1;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == value) return i;
+        }
+        throw new IOException("unknown search " + value);
+    }
+
+    private static void writeInts(DataOutput out, int[]ints) throws IOException {
+        if (ints == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ints.length);
+        for (int i : ints) out.writeInt(i);
+    }
+
+    private static int[] readInts(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        int[]ints = new int[length];
+        for (int i = 0; i < length; i++) ints[i] = in.readInt();
+        return ints;
+    }
+
+    private static void writeBytes(DataOutput out, byte[]bytes) throws IOException {
+        writeBytes(out, bytes, 0, bytes == null ? 0 : bytes.length);
+    }
+
+    private static void writeBytes(DataOutput out, byte[]bytes, int p, int end) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(end - p);
+        out.write(bytes, p, end - p);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        byte[]bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[]bytes, int p, int length) {
+            if (!buffer.hasRemaining()) return -1;
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, p, length);
+            return length;
+        }
+    }
+}
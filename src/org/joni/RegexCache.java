@@ -0,0 +1,228 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jcodings.Encoding;
+
+/**
+ * Bounded cache of compiled regexps keyed on pattern bytes, options, case fold flag, encoding and syntax.
+ *
+ * Entries are spread over lock striped segments each holding an access ordered map with its share of
+ * the maximum size, the least recently used entry of a segment is evicted first. Compilation happens
+ * outside of the segment lock so a slow pattern does not stall other lookups, when two threads race on
+ * the same key the first regex stored wins.
+ *
+ * Cached instances are shared, so userObject/userOptions must not be used on them and warnings are
+ * only reported for the compilation that populated the entry. Neither should the matcher defaults of
+ * a regex, the retry limits and the metrics listener, be set on them: they would apply to every user
+ * of the pattern. Set them on each Matcher instead.
+ */
+public final class RegexCache {
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maximumSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RegexCache(int maximumSize) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public RegexCache(int maximumSize, int concurrencyLevel) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize: " + maximumSize);
+        if (concurrencyLevel <= 0) throw new IllegalArgumentException("concurrencyLevel: " + concurrencyLevel);
+
+        int n = 1;
+        while (n < concurrencyLevel && n < maximumSize) n <<= 1;
+
+        this.maximumSize = maximumSize;
+        segments = new Segment[n];
+        segmentMask = n - 1;
+        // shares add up to maximumSize, n never exceeds it so that every segment holds at least one entry
+        for (int i = 0; i < n; i++) segments[i] = new Segment(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+    }
+
+    public Regex get(byte[]bytes, int p, int end, int option, Encoding enc) {
+        return get(bytes, p, end, option, Config.ENC_CASE_FOLD_DEFAULT, enc, Syntax.RUBY, WarnCallback.DEFAULT);
+    }
+
+    public Regex get(byte[]bytes, int p, int end, int option, Encoding enc, Syntax syntax) {
+        return get(bytes, p, end, option, Config.ENC_CASE_FOLD_DEFAULT, enc, syntax, WarnCallback.DEFAULT);
+    }
+
+    public Regex get(byte[]bytes, int p, int end, int option, Encoding enc, Syntax syntax, WarnCallback warnings) {
+        return get(bytes, p, end, option, Config.ENC_CASE_FOLD_DEFAULT, enc, syntax, warnings);
+    }
+
+    public Regex get(byte[]bytes, int p, int end, int option, int caseFoldFlag, Encoding enc, Syntax syntax, WarnCallback warnings) {
+        Key key = new Key(bytes, p, end, option, caseFoldFlag, enc, syntax);
+        Segment segment = segments[spread(key.hash) & segmentMask];
+
+        Regex regex = segment.get(key);
+        if (regex != null) {
+            hits.incrementAndGet();
+            return regex;
+        }
+        misses.incrementAndGet();
+
+        regex = new Regex(bytes, p, end, option, caseFoldFlag, enc, syntax, warnings);
+        return segment.add(key.copy(), regex);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) segment.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RegexCache(size: " + size() + "/" + maximumSize + ", hits: " + hitCount() + ", misses: " + missCount() + ", evictions: " + evictionCount() + ")";
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 16);
+        return h ^ (h >>> 8);
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<Key, Regex> map;
+
+        Segment(final int capacity) {
+            map = new LinkedHashMap<Key, Regex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Regex> eldest) {
+                    if (size() > capacity) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Regex get(Key key) {
+            return map.get(key);
+        }
+
+        synchronized Regex add(Key key, Regex regex) {
+            Regex existing = map.get(key);
+            if (existing != null) return existing;
+            map.put(key, regex);
+            return regex;
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    private static final class Key {
+        final byte[]bytes;
+        final int p, end;
+        final int option;
+        final int caseFoldFlag;
+        final Encoding enc;
+        final Syntax syntax;
+        final int hash;
+
+        Key(byte[]bytes, int p, int end, int option, int caseFoldFlag, Encoding enc, Syntax syntax) {
+            this(bytes, p, end, option, caseFoldFlag, enc, syntax, hash(bytes, p, end, option, caseFoldFlag, enc, syntax));
+        }
+
+        private Key(byte[]bytes, int p, int end, int option, int caseFoldFlag, Encoding enc, Syntax syntax, int hash) {
+            this.bytes = bytes;
+            this.p = p;
+            this.end = end;
+            this.option = option;
+            this.caseFoldFlag = caseFoldFlag;
+            this.enc = enc;
+            this.syntax = syntax;
+            this.hash = hash;
+        }
+
+        // lookups borrow the caller's array, stored keys own a copy
+        Key copy() {
+            return new Key(Arrays.copyOfRange(bytes, p, end), 0, end - p, option, caseFoldFlag, enc, syntax, hash);
+        }
+
+        private static int hash(byte[]bytes, int p, int end, int option, int caseFoldFlag, Encoding enc, Syntax syntax) {
+            int h = 1;
+            for (int i = p; i < end; i++) h = 31 * h + bytes[i];
+            h = 31 * h + option;
+            h = 31 * h + caseFoldFlag;
+            h = 31 * h + System.identityHashCode(enc);
+            h = 31 * h + System.identityHashCode(syntax);
+            return h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Key k = (Key)other;
+            if (hash != k.hash || option != k.option || caseFoldFlag != k.caseFoldFlag || enc != k.enc || syntax != k.syntax) return false;
+            int len = end - p;
+            if (len != k.end - k.p) return false;
+            for (int i = 0; i < len; i++) {
+                if (bytes[p + i] != k.bytes[k.p + i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import org.jcodings.Encoding;
+
+/**
+ * A group of regexps matched against a subject together, answering which of them match.
+ *
+ * A shared literal prefilter first finds, in one pass, where the literal each regex's optimization info requires
+ * occurs, regexps whose literal is absent cannot match and are not looked at again. Members compiled to an
+ * assertion free automaton are combined into a single lazily built DFA and found in one more pass, the others
+ * are searched one by one starting no earlier than their literal allows.
+ *
+ * A set is immutable and may be used from several threads.
+ */
+public final class RegexSet {
+    private final Regex[]regexps;
+    private final AutomatonSet automata;    // combined members, may be null
+    private final int[]automatonMembers;    // set index of every combined member
+    private final int[]others;              // set index of the regexps searched one by one
+    private final byte[][]literals;         // required literal of every regex, null when it has none
+    private final LiteralPrefilter prefilter;
+
+    public RegexSet(byte[][]patterns, int option, Encoding enc) {
+        this(patterns, option, Config.ENC_CASE_FOLD_DEFAULT, enc, Syntax.RUBY, WarnCallback.DEFAULT);
+    }
+
+    public RegexSet(byte[][]patterns, int option, Encoding enc, Syntax syntax) {
+        this(patterns, option, Config.ENC_CASE_FOLD_DEFAULT, enc, syntax, WarnCallback.DEFAULT);
+    }
+
+    public RegexSet(byte[][]patterns, int option, int caseFoldFlag, Encoding enc, Syntax syntax, WarnCallback warnings) {
+        this(compile(patterns, option, caseFoldFlag, enc, syntax, warnings));
+    }
+
+    public RegexSet(Regex... regexps) {
+        if (regexps.length == 0) throw new IllegalArgumentException("empty regex set");
+        Encoding enc = regexps[0].enc;
+        for (Regex regex : regexps) {
+            if (regex.enc != enc) throw new IllegalArgumentException("mixed encodings: " + enc + ", " + regex.enc);
+        }
+        this.regexps = regexps.clone();
+
+        int numAutomata = 0;
+        for (Regex regex : regexps) {
+            if (isCombinable(regex, regexps[0])) numAutomata++;
+        }
+        if (numAutomata < 2) numAutomata = 0; // a lone automaton is better served by the regex itself
+
+        automatonMembers = new int[numAutomata];
+        others = new int[regexps.length - numAutomata];
+        literals = new byte[regexps.length][];
+        Regex[]members = new Regex[numAutomata];
+        int m = 0, o = 0;
+        for (int i = 0; i < regexps.length; i++) {
+            Regex regex = regexps[i];
+            if (!regex.isExactIgnoreCase()) literals[i] = regex.getExactString();
+            if (numAutomata > 0 && isCombinable(regex, regexps[0])) {
+                members[m] = regex;
+                automatonMembers[m++] = i;
+            } else {
+                others[o++] = i;
+            }
+        }
+        automata = numAutomata == 0 ? null : new AutomatonSet(members);
+        prefilter = LiteralPrefilter.create(literals);
+    }
+
+    private static Regex[]compile(byte[][]patterns, int option, int caseFoldFlag, Encoding enc, Syntax syntax, WarnCallback warnings) {
+        Regex[]regexps = new Regex[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            regexps[i] = new Regex(patterns[i], 0, patterns[i].length, option, caseFoldFlag, enc, syntax, warnings);
+        }
+        return regexps;
+    }
+
+    private static boolean isCombinable(Regex regex, Regex first) {
+        return regex.automaton != null && !regex.automaton.hasAssertions() &&
+               regex.caseFoldFlag == first.caseFoldFlag && (regex.options & Option.CR_7_BIT) == 0;
+    }
+
+    public int size() {
+        return regexps.length;
+    }
+
+    public Regex get(int index) {
+        return regexps[index];
+    }
+
+    public Encoding getEncoding() {
+        return regexps[0].enc;
+    }
+
+    /**
+     * Indices of the regexps matching somewhere in bytes[p..end), in ascending order.
+     * A search cut short by a retry limit or a timeout raises an IllegalStateException.
+     */
+    public int[]matches(byte[]bytes, int p, int end) {
+        int[]starts = scan(bytes, p, end, false);
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            int start = starts[i];
+            if (start >= 0) {
+                count++;
+            } else if (start != Matcher.FAILED) {
+                throw new IllegalStateException((start == Matcher.RETRY_LIMIT_EXCEEDED ? "retry limit exceeded" : "search interrupted") + " in regex " + i);
+            }
+        }
+        int[]indices = new int[count];
+        count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] >= 0) indices[count++] = i;
+        }
+        return indices;
+    }
+
+    public int[]matches(byte[]bytes) {
+        return matches(bytes, 0, bytes.length);
+    }
+
+    public boolean matchesAny(byte[]bytes, int p, int end) {
+        return matches(bytes, p, end).length > 0;
+    }
+
+    /**
+     * Start of the leftmost match of every regex, relative to p like {@link Matcher#search}, or {@link Matcher#FAILED}.
+     * A search cut short gives {@link Matcher#RETRY_LIMIT_EXCEEDED} or {@link Matcher#INTERRUPTED} for its regex.
+     */
+    public int[]search(byte[]bytes, int p, int end) {
+        return scan(bytes, p, end, true);
+    }
+
+    // FAILED for the regexps not matching, the match start for the others when starts are wanted
+    private int[]scan(byte[]bytes, int p, int end, boolean starts) {
+        int[]result = new int[regexps.length];
+        int[]first = prefilter == null ? null : prefilter.firstOccurrences(bytes, p, end);
+
+        if (automata != null) {
+            boolean possible = false;
+            for (int i : automatonMembers) {
+                if (isPossible(i, first)) possible = true;
+            }
+            boolean[]found = new boolean[automata.size()];
+            if (possible && automata.scan(bytes, p, end, found, found.length) == Automaton.BAIL) {
+                for (int m = 0; m < found.length; m++) found[m] = true; // let the regexps decide
+                starts = true;
+            }
+            for (int m = 0; m < found.length; m++) {
+                int i = automatonMembers[m];
+                result[i] = !found[m] ? Matcher.FAILED : starts ? search(i, first, bytes, p, end) : 0;
+            }
+        }
+
+        for (int i : others) {
+            result[i] = isPossible(i, first) ? search(i, first, bytes, p, end) : Matcher.FAILED;
+        }
+        return result;
+    }
+
+    private boolean isPossible(int i, int[]first) {
+        return first == null || literals[i] == null || first[i] != LiteralPrefilter.NOT_FOUND;
+    }
+
+    // no match can start further than dMax before the first occurrence of the literal
+    private int search(int i, int[]first, byte[]bytes, int p, int end) {
+        Regex regex = regexps[i];
+        int start = p;
+        if (first != null && literals[i] != null && regex.dMax != MinMaxLen.INFINITE_DISTANCE && first[i] - regex.dMax > p) {
+            start = regex.enc.leftAdjustCharHead(bytes, p, first[i] - regex.dMax, end);
+        }
+        return regex.matcherNoRegion(bytes, p, end).search(p, start, end, Option.NONE);
+    }
+}
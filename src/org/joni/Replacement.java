@@ -0,0 +1,318 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.nio.ByteBuffer;
+
+import org.jcodings.Encoding;
+import org.joni.exception.ErrorMessages;
+import org.joni.exception.ValueException;
+
+/**
+ * A replacement template compiled against a regex, expanding \0 to \9 and \& to groups, \k&lt;name&gt; to a
+ * named group, \` and \' to the text before and after the match and \\ to a backslash. Other escapes are
+ * copied as they are. Names are resolved once here, a name shared by several groups expands to the last
+ * one that matched.
+ *
+ * A replacement is immutable and can be shared by threads, each using its own matcher.
+ */
+public final class Replacement {
+    private static final int LITERAL    = 0;    // template begin, end
+    private static final int GROUP      = 1;    // group number
+    private static final int NAME       = 2;    // index into names
+    private static final int PRE_MATCH  = 3;
+    private static final int POST_MATCH = 4;
+
+    private final Regex regex;
+    private final byte[]bytes;
+    private final int[]code;                // op, arg1, arg2 triples
+    private final int[][]names;
+    private final boolean groups;           // refers to groups other than 0
+
+    public Replacement(Regex regex, byte[]bytes) {
+        this(regex, bytes, 0, bytes.length);
+    }
+
+    public Replacement(Regex regex, byte[]bytes, int p, int end) {
+        this.regex = regex;
+        this.bytes = new byte[end - p];
+        System.arraycopy(bytes, p, this.bytes, 0, end - p);
+
+        Encoding enc = regex.enc;
+        byte[]t = this.bytes;
+        int tEnd = t.length;
+        int[]code = new int[12];
+        int[][]names = new int[0][];
+        int len = 0;
+        boolean groups = false;
+        int literal = 0, q = 0;
+        while (q < tEnd) {
+            int n = charLength(enc, t, q, tEnd);
+            int r = q + n;
+            if (r >= tEnd || enc.mbcToCode(t, q, tEnd) != '\\') {
+                q = r;
+                continue;
+            }
+            int c = enc.mbcToCode(t, r, tEnd);
+            int next = r + charLength(enc, t, r, tEnd);
+            int op, arg = 0;
+            switch (c) {
+            case '0': case '1': case '2': case '3': case '4':
+            case '5': case '6': case '7': case '8': case '9':
+                op = GROUP;
+                arg = c - '0';
+                break;
+            case '&':
+                op = GROUP;
+                break;
+            case '`':
+                op = PRE_MATCH;
+                break;
+            case '\'':
+                op = POST_MATCH;
+                break;
+            case '\\':
+                op = LITERAL;
+                break;
+            case 'k':
+                int nameEnd = next < tEnd && enc.mbcToCode(t, next, tEnd) == '<' ? nameEnd(enc, t, next, tEnd) : -1;
+                if (nameEnd == -1) {
+                    q = next;
+                    continue;
+                }
+                int nameP = next + charLength(enc, t, next, tEnd);
+                NameEntry e = regex.nameToGroupNumbers(t, nameP, nameEnd);
+                if (e == null) throw new ValueException(ErrorMessages.UNDEFINED_NAME_REFERENCE, new String(t, nameP, nameEnd - nameP));
+                int[][]tmp = new int[names.length + 1][];
+                System.arraycopy(names, 0, tmp, 0, names.length);
+                tmp[names.length] = e.getBackRefs();
+                names = tmp;
+                op = NAME;
+                arg = names.length - 1;
+                next = nameEnd + charLength(enc, t, nameEnd, tEnd);
+                break;
+            default:
+                q = next;
+                continue;
+            }
+            if (len + 6 > code.length) {
+                int[]tmp = new int[code.length << 1];
+                System.arraycopy(code, 0, tmp, 0, len);
+                code = tmp;
+            }
+            // an escaped backslash keeps the first one
+            int literalEnd = c == '\\' ? r : q;
+            if (literalEnd > literal) {
+                code[len++] = LITERAL;
+                code[len++] = literal;
+                code[len++] = literalEnd;
+            }
+            // a group the regex doesn't have expands to nothing
+            if (op != LITERAL && (op != GROUP || arg <= regex.numberOfCaptures())) {
+                code[len++] = op;
+                code[len++] = arg;
+                code[len++] = 0;
+                if (op == NAME || (op == GROUP && arg > 0)) groups = true;
+            }
+            literal = q = next;
+        }
+        if (tEnd > literal) {
+            if (len + 3 > code.length) {
+                int[]tmp = new int[len + 3];
+                System.arraycopy(code, 0, tmp, 0, len);
+                code = tmp;
+            }
+            code[len++] = LITERAL;
+            code[len++] = literal;
+            code[len++] = tEnd;
+        }
+        this.code = new int[len];
+        System.arraycopy(code, 0, this.code, 0, len);
+        this.names = names;
+        this.groups = groups;
+    }
+
+    private static int charLength(Encoding enc, byte[]bytes, int p, int end) {
+        int n = enc.length(bytes, p, end);
+        return n <= 0 ? 1 : Math.min(n, end - p);
+    }
+
+    // position of the '>' closing a name, -1 if there is none
+    private static int nameEnd(Encoding enc, byte[]bytes, int p, int end) {
+        p += charLength(enc, bytes, p, end);
+        int start = p;
+        while (p < end) {
+            if (enc.mbcToCode(bytes, p, end) == '>') return p > start ? p : -1;
+            p += charLength(enc, bytes, p, end);
+        }
+        return -1;
+    }
+
+    public Regex getRegex() {
+        return regex;
+    }
+
+    /**
+     * The subject of the matcher with every match in start..range replaced.
+     */
+    public byte[] replaceAll(Matcher matcher, int start, int range) {
+        ArrayOutput out = new ArrayOutput(matcher.end - matcher.str);
+        replace(matcher, start, range, Integer.MAX_VALUE, out);
+        return out.toArray();
+    }
+
+    /**
+     * The subject of the matcher with the first match in start..range replaced.
+     */
+    public byte[] replaceFirst(Matcher matcher, int start, int range) {
+        ArrayOutput out = new ArrayOutput(matcher.end - matcher.str);
+        replace(matcher, start, range, 1, out);
+        return out.toArray();
+    }
+
+    /**
+     * Writes the subject of the matcher with every match in start..range replaced, returning the number
+     * of matches. A buffer too small raises a BufferOverflowException.
+     */
+    public int replaceAll(Matcher matcher, int start, int range, ByteBuffer out) {
+        return replace(matcher, start, range, Integer.MAX_VALUE, new BufferOutput(out));
+    }
+
+    public int replaceFirst(Matcher matcher, int start, int range, ByteBuffer out) {
+        return replace(matcher, start, range, 1, new BufferOutput(out));
+    }
+
+    /**
+     * Writes the expansion for the last match of the matcher.
+     */
+    public void expand(Matcher matcher, ByteBuffer out) {
+        check(matcher);
+        expand(matcher, matcher.msaBegin, matcher.msaEnd, new BufferOutput(out));
+    }
+
+    private void check(Matcher matcher) {
+        if (matcher.regex != regex) throw new IllegalArgumentException("matcher of another regex");
+        if (groups && matcher.msaRegion == null) throw new IllegalArgumentException("template refers to groups, the matcher has no region");
+    }
+
+    private int replace(Matcher matcher, int start, int range, int limit, Output out) {
+        check(matcher);
+        if (range < start) throw new IllegalArgumentException("backward range: " + start + ".." + range);
+        byte[]subject = matcher.bytes;
+        int str = matcher.str;
+        int copied = 0; // relative to str
+        int n = 0;
+        while (n < limit && start <= range) {
+            int s = matcher.search(start, range, Option.NONE);
+            if (s == Matcher.FAILED) break;
+            if (s < 0) throw new IllegalStateException(s == Matcher.RETRY_LIMIT_EXCEEDED ? "retry limit exceeded" : "search interrupted");
+            int e = matcher.msaEnd;
+            out.put(subject, str + copied, s - copied);
+            expand(matcher, s, e, out);
+            copied = e;
+            n++;
+            start = matcher.nextStart(s, e, range);
+        }
+        out.put(subject, str + copied, matcher.end - str - copied);
+        return n;
+    }
+
+    private void expand(Matcher matcher, int begin, int end, Output out) {
+        byte[]subject = matcher.bytes;
+        int str = matcher.str;
+        Region region = matcher.msaRegion;
+        int[]code = this.code;
+        for (int i = 0; i < code.length; i += 3) {
+            switch (code[i]) {
+            case LITERAL:
+                out.put(bytes, code[i + 1], code[i + 2] - code[i + 1]);
+                break;
+            case GROUP:
+                int group = code[i + 1];
+                if (group == 0) {
+                    out.put(subject, str + begin, end - begin);
+                } else if (region.getBeg(group) != Region.REGION_NOTPOS) {
+                    out.put(subject, str + region.getBeg(group), region.getEnd(group) - region.getBeg(group));
+                }
+                break;
+            case NAME:
+                int[]refs = names[code[i + 1]];
+                for (int j = refs.length - 1; j >= 0; j--) {
+                    int beg = region.getBeg(refs[j]);
+                    if (beg != Region.REGION_NOTPOS) {
+                        out.put(subject, str + beg, region.getEnd(refs[j]) - beg);
+                        break;
+                    }
+                }
+                break;
+            case PRE_MATCH:
+                out.put(subject, str, begin);
+                break;
+            case POST_MATCH:
+                out.put(subject, str + end, matcher.end - str - end);
+                break;
+            }
+        }
+    }
+
+    private static abstract class Output {
+        abstract void put(byte[]bytes, int p, int length);
+    }
+
+    private static final class ArrayOutput extends Output {
+        private byte[]buf;
+        private int len;
+
+        ArrayOutput(int capacity) {
+            buf = new byte[Math.max(capacity, 16)];
+        }
+
+        @Override
+        void put(byte[]bytes, int p, int length) {
+            if (len + length > buf.length) {
+                byte[]tmp = new byte[Math.max(len + length, buf.length << 1)];
+                System.arraycopy(buf, 0, tmp, 0, len);
+                buf = tmp;
+            }
+            System.arraycopy(bytes, p, buf, len, length);
+            len += length;
+        }
+
+        byte[] toArray() {
+            if (len == buf.length) return buf;
+            byte[]result = new byte[len];
+            System.arraycopy(buf, 0, result, 0, len);
+            return result;
+        }
+    }
+
+    private static final class BufferOutput extends Output {
+        private final ByteBuffer buf;
+
+        BufferOutput(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        void put(byte[]bytes, int p, int length) {
+            buf.put(bytes, p, length);
+        }
+    }
+}
@@ -55,6 +55,25 @@ final class Search {
         return true;
     }
 
+    // candidates for the target byte at offset come from ByteScan, matches start before end
+    private static int scanForward(byte[]text, int s, int end, byte[]target, int targetP, int targetEnd, int offset) {
+        byte anchor = target[targetP + offset];
+        while (s < end) {
+            s = ByteScan.indexOf(text, s + offset, end + offset, anchor);
+            if (s == -1) return -1;
+            s -= offset;
+            int p = s;
+            int t = targetP;
+            while (t < targetEnd) {
+                if (target[t] != text[p++]) break;
+                t++;
+            }
+            if (t == targetEnd) return s;
+            s++;
+        }
+        return -1;
+    }
+
     static final Forward SLOW_FORWARD = new Forward() {
         @Override
         final String getName() {
@@ -73,6 +92,8 @@ final class Search {
             if (end > textRange) end = textRange;
             int s = textP;
 
+            if (enc.isUTF8()) return scanForward(text, s, end, target, targetP, targetEnd, 0); // lead bytes never occur inside a character
+
             while (s < end) {
                 if (text[s] == target[targetP]) {
                     int p = s + 1;
@@ -134,22 +155,29 @@ final class Search {
             int end = textEnd;
             end -= targetEnd - targetP - 1;
             if (end > textRange) end = textRange;
-            int s = textP;
 
-            while (s < end) {
-                if (text[s] == target[targetP]) {
-                    int p = s + 1;
-                    int t = targetP + 1;
-                    while (t < targetEnd) {
-                        if (target[t] != text[p++]) break;
-                        t++;
-                    }
+            return scanForward(text, textP, end, target, targetP, targetEnd, 0);
+        }
+    };
 
-                    if (t == targetEnd) return s;
-                }
-                s++;
-            }
-            return -1;
+    // anchored on the rarest target byte, single byte and utf-8 only
+    static final Forward RARE_BYTE_FORWARD = new Forward() {
+        @Override
+        final String getName() {
+            return "EXACT_RARE_BYTE_FORWARD";
+        }
+        @Override
+        final int search(Matcher matcher, byte[]text, int textP, int textEnd, int textRange) {
+            Regex regex = matcher.regex;
+            byte[]target = regex.exact;
+            int targetP = regex.exactP;
+            int targetEnd = regex.exactEnd;
+
+            int end = textEnd;
+            end -= targetEnd - targetP - 1;
+            if (end > textRange) end = textRange;
+
+            return scanForward(text, textP, end, target, targetP, targetEnd, regex.exactRare);
         }
     };
 
@@ -571,6 +599,9 @@ final class Search {
             byte[]map = regex.map;
             int s = textP;
 
+            byte[]few = regex.mapBytes;
+            if (few != null) return ByteScan.indexOfAny(text, s, textRange, few[0], few[1], few[2]);
+
             while (s < textRange) {
                 if (map[text[s] & 0xff] != 0) return s;
                 s += enc.length(text, s, textEnd);
@@ -596,6 +627,18 @@ final class Search {
         }
     };
 
+    static final Forward LITERAL_SET_FORWARD = new Forward() {
+        @Override
+        final String getName() {
+            return "LITERAL_SET_FORWARD";
+        }
+
+        @Override
+        final int search(Matcher matcher, byte[]text, int textP, int textEnd, int textRange) {
+            return matcher.regex.literalSet.firstStart(text, textP, textEnd, textRange);
+        }
+    };
+
     static final Forward MAP_SB_FORWARD = new Forward() {
         @Override
         final String getName() {
@@ -607,6 +650,9 @@ final class Search {
             byte[]map = regex.map;
             int s = textP;
 
+            byte[]few = regex.mapBytes;
+            if (few != null) return ByteScan.indexOfAny(text, s, textRange, few[0], few[1], few[2]);
+
             while (s < textRange) {
                 if (map[text[s] & 0xff] != 0) return s;
                 s++;
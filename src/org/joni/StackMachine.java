@@ -31,7 +31,13 @@ import org.joni.constants.internal.StackType;
 abstract class StackMachine extends Matcher implements StackType {
     protected static final int INVALID_INDEX = -1;
 
-    protected StackEntry[]stack;
+    /* packed backtrack stack, entry k occupies stack[k * FRAME_SIZE ... (k + 1) * FRAME_SIZE - 1]
+     * as type followed by the union members E1..E4 (and the state check number for CEC)
+     */
+    static final int FRAME_SIZE = USE_CEC ? 6 : 5;
+    private static final int TYPE = 0, E1 = 1, E2 = 2, E3 = 3, E4 = 4, E5 = 5;
+
+    protected int[]stack;
     protected int stk;  // stkEnd
     protected final int[]repeatStk;
     protected final int memStartStk, memEndStk;
@@ -65,24 +71,20 @@ abstract class StackMachine extends Matcher implements StackType {
         }
     }
 
-    private static StackEntry[] allocateStack() {
-        StackEntry[]stack = new StackEntry[Config.INIT_MATCH_STACK_SIZE];
-        stack[0] = USE_CEC ? new SCStackEntry() : new StackEntry();
-        return stack;
+    private static int[] allocateStack() {
+        return new int[Config.INIT_MATCH_STACK_SIZE * FRAME_SIZE];
     }
 
     private void doubleStack() {
-        StackEntry[] newStack = new StackEntry[stack.length << 1];
-        System.arraycopy(stack, 0, newStack, 0, stack.length);
-        stack = newStack;
+        stack = Arrays.copyOf(stack, stack.length << 1);
     }
 
-    static final ThreadLocal<WeakReference<StackEntry[]>> stacks
+    static final ThreadLocal<WeakReference<int[]>> stacks
             = new ThreadLocal<>();
 
-    private static StackEntry[] fetchStack() {
-        WeakReference<StackEntry[]> ref = stacks.get();
-        StackEntry[] stack;
+    private static int[] fetchStack() {
+        WeakReference<int[]> ref = stacks.get();
+        int[] stack;
         if (ref == null) {
             stacks.set( new WeakReference<>(stack = allocateStack()) );
         }
@@ -95,16 +97,111 @@ abstract class StackMachine extends Matcher implements StackType {
         return stack;
     }
 
-    private final StackEntry ensure1() {
-        if (stk >= stack.length) doubleStack();
-        StackEntry e = stack[stk];
-        if (e == null) stack[stk] = e = USE_CEC ? new SCStackEntry() : new StackEntry();
-        return e;
+    // stack entry accessors, k is an entry index
+
+    protected final int getType(int k) {
+        return stack[k * FRAME_SIZE + TYPE];
+    }
+    protected final void setType(int k, int type) {
+        stack[k * FRAME_SIZE + TYPE] = type;
     }
 
-    private final void pushType(int type) {
-        ensure1().type = type;
+    // first union member
+    /* byte code position */
+    protected final int getStatePCode(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+    /* string position */
+    protected final int getStatePStr(int k) {
+        return stack[k * FRAME_SIZE + E2];
+    }
+    /* previous char position of pstr */
+    protected final int getStatePStrPrev(int k) {
+        return stack[k * FRAME_SIZE + E3];
+    }
+    protected final int getPKeep(int k) {
+        return stack[k * FRAME_SIZE + E4];
+    }
+    protected final int getStateCheck(int k) {
+        return stack[k * FRAME_SIZE + E5];
+    }
+
+    // second union member
+    /* for OP_REPEAT_INC, OP_REPEAT_INC_NG */
+    protected final int getRepeatCount(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+    protected final int increaseRepeatCount(int k) {
+        return ++stack[k * FRAME_SIZE + E1];
+    }
+    /* byte code position (head of repeated target) */
+    protected final int getRepeatPCode(int k) {
+        return stack[k * FRAME_SIZE + E2];
+    }
+    /* repeat id */
+    protected final int getRepeatNum(int k) {
+        return stack[k * FRAME_SIZE + E3];
+    }
+
+    // third union member
+    /* index of stack */
+    protected final int getSi(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+
+    // fourth union member
+    /* memory num */
+    protected final int getMemNum(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+    /* start/end position */
+    protected final int getMemPStr(int k) {
+        return stack[k * FRAME_SIZE + E2];
+    }
+    /* prev. info (for backtrack  "(...)*" ), set if this stack type is MEM-START */
+    protected final int getMemPrevStart(int k) {
+        return stack[k * FRAME_SIZE + E3];
+    }
+    protected final int getMemPrevEnd(int k) {
+        return stack[k * FRAME_SIZE + E4];
+    }
+
+    // fifth union member
+    /* null check id */
+    protected final int getNullCheckNum(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+    /* start position */
+    protected final int getNullCheckPStr(int k) {
+        return stack[k * FRAME_SIZE + E2];
+    }
+
+    // sixth union member
+    /* byte code position */
+    protected final int getCallFrameRetAddr(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+
+    /* absent position */
+    protected final int getAbsentStr(int k) {
+        return stack[k * FRAME_SIZE + E1];
+    }
+    protected final int getAbsentEndStr(int k) {
+        return stack[k * FRAME_SIZE + E2];
+    }
+
+    // returns the offset of a fresh entry of given type
+    private int push1(int type) {
+        int b = stk * FRAME_SIZE;
+        if (b + FRAME_SIZE > stack.length) doubleStack();
+        stack[b + TYPE] = type;
         stk++;
+        if (Config.USE_METRICS && metrics != null) metrics.pushed(stk);
+        return b;
+    }
+
+    private final void pushType(int type) {
+        push1(type);
     }
 
     // CEC
@@ -125,8 +222,7 @@ abstract class StackMachine extends Matcher implements StackType {
 
     // ELSE_IF_STATE_CHECK_MARK
     private void stateCheckMark() {
-        StackEntry e = stack[stk];
-        int x = stateCheckPos(e.getStatePStr(), ((SCStackEntry)e).getStateCheck());
+        int x = stateCheckPos(getStatePStr(stk), getStateCheck(stk));
         stateCheckBuff[x / 8] |= (1 << (x % 8));
     }
 
@@ -164,42 +260,37 @@ abstract class StackMachine extends Matcher implements StackType {
     }
 
     private void push(int type, int pat, int s, int prev, int pkeep) {
-        StackEntry e = ensure1();
-        e.type = type;
-        e.setStatePCode(pat);
-        e.setStatePStr(s);
-        e.setStatePStrPrev(prev);
-        if (USE_CEC) ((SCStackEntry)e).setStateCheck(0);
-        e.setPKeep(pkeep);
-        stk++;
+        int b = push1(type);
+        stack[b + E1] = pat;
+        stack[b + E2] = s;
+        stack[b + E3] = prev;
+        stack[b + E4] = pkeep;
+        if (USE_CEC) stack[b + E5] = 0;
     }
 
     private final void pushEnsured(int type, int pat) {
-        StackEntry e = stack[stk];
-        e.type = type;
-        e.setStatePCode(pat);
-        if (USE_CEC) ((SCStackEntry)e).setStateCheck(0);
+        int b = stk * FRAME_SIZE;
+        stack[b + TYPE] = type;
+        stack[b + E1] = pat;
+        if (USE_CEC) stack[b + E5] = 0;
         stk++;
+        if (Config.USE_METRICS && metrics != null) metrics.pushed(stk);
     }
 
     protected final void pushAltWithStateCheck(int pat, int s, int sprev, int snum, int pkeep) {
-        StackEntry e = ensure1();
-        e.type = ALT;
-        e.setStatePCode(pat);
-        e.setStatePStr(s);
-        e.setStatePStrPrev(sprev);
-        if (USE_CEC) ((SCStackEntry)e).setStateCheck(stateCheckBuff != null ? snum : 0);
-        e.setPKeep(pkeep);
-        stk++;
+        int b = push1(ALT);
+        stack[b + E1] = pat;
+        stack[b + E2] = s;
+        stack[b + E3] = sprev;
+        stack[b + E4] = pkeep;
+        if (USE_CEC) stack[b + E5] = stateCheckBuff != null ? snum : 0;
     }
 
     protected final void pushStateCheck(int s, int snum) {
         if (stateCheckBuff != null) {
-            StackEntry e = ensure1();
-            e.type = STATE_CHECK_MARK;
-            e.setStatePStr(s);
-            ((SCStackEntry)e).setStateCheck(snum);
-            stk++;
+            int b = push1(STATE_CHECK_MARK);
+            stack[b + E2] = s;
+            stack[b + E5] = snum;
         }
     }
 
@@ -224,49 +315,39 @@ abstract class StackMachine extends Matcher implements StackType {
     }
 
     protected final void pushRepeat(int id, int pat) {
-        StackEntry e = ensure1();
-        e.type = REPEAT;
-        e.setRepeatNum(id);
-        e.setRepeatPCode(pat);
-        e.setRepeatCount(0);
-        stk++;
+        int b = push1(REPEAT);
+        stack[b + E1] = 0; /* count */
+        stack[b + E2] = pat;
+        stack[b + E3] = id;
     }
 
     protected final void pushRepeatInc(int sindex) {
-        StackEntry e = ensure1();
-        e.type = REPEAT_INC;
-        e.setSi(sindex);
-        stk++;
+        int b = push1(REPEAT_INC);
+        stack[b + E1] = sindex;
     }
 
     protected final void pushMemStart(int mnum, int s) {
-        StackEntry e = ensure1();
-        e.type = MEM_START;
-        e.setMemNum(mnum);
-        e.setMemPstr(s);
-        e.setMemStart(repeatStk[memStartStk + mnum]);
-        e.setMemEnd(repeatStk[memEndStk + mnum]);
-        repeatStk[memStartStk + mnum] = stk;
+        int b = push1(MEM_START);
+        stack[b + E1] = mnum;
+        stack[b + E2] = s;
+        stack[b + E3] = repeatStk[memStartStk + mnum];
+        stack[b + E4] = repeatStk[memEndStk + mnum];
+        repeatStk[memStartStk + mnum] = stk - 1;
         repeatStk[memEndStk + mnum] = INVALID_INDEX;
-        stk++;
     }
 
     protected final void pushMemEnd(int mnum, int s) {
-        StackEntry e = ensure1();
-        e.type = MEM_END;
-        e.setMemNum(mnum);
-        e.setMemPstr(s);
-        e.setMemStart(repeatStk[memStartStk + mnum]);
-        e.setMemEnd(repeatStk[memEndStk + mnum]);
-        repeatStk[memEndStk + mnum] = stk;
-        stk++;
+        int b = push1(MEM_END);
+        stack[b + E1] = mnum;
+        stack[b + E2] = s;
+        stack[b + E3] = repeatStk[memStartStk + mnum];
+        stack[b + E4] = repeatStk[memEndStk + mnum];
+        repeatStk[memEndStk + mnum] = stk - 1;
     }
 
     protected final void pushMemEndMark(int mnum) {
-        StackEntry e = ensure1();
-        e.type = MEM_END_MARK;
-        e.setMemNum(mnum);
-        stk++;
+        int b = push1(MEM_END_MARK);
+        stack[b + E1] = mnum;
     }
 
     protected final int getMemStart(int mnum) {
@@ -275,10 +356,10 @@ abstract class StackMachine extends Matcher implements StackType {
 
         while (stkp > 0) {
             stkp--;
-            StackEntry e = stack[stkp];
-            if ((e.type & MASK_MEM_END_OR_MARK) != 0 && e.getMemNum() == mnum) {
+            int type = getType(stkp);
+            if ((type & MASK_MEM_END_OR_MARK) != 0 && getMemNum(stkp) == mnum) {
                 level++;
-            } else if (e.type == MEM_START && e.getMemNum() == mnum) {
+            } else if (type == MEM_START && getMemNum(stkp) == mnum) {
                 if (level == 0) break;
                 level--;
             }
@@ -287,52 +368,42 @@ abstract class StackMachine extends Matcher implements StackType {
     }
 
     protected final void pushNullCheckStart(int cnum, int s) {
-        StackEntry e = ensure1();
-        e.type = NULL_CHECK_START;
-        e.setNullCheckNum(cnum);
-        e.setNullCheckPStr(s);
-        stk++;
+        int b = push1(NULL_CHECK_START);
+        stack[b + E1] = cnum;
+        stack[b + E2] = s;
     }
 
     protected final void pushNullCheckEnd(int cnum) {
-        StackEntry e = ensure1();
-        e.type = NULL_CHECK_END;
-        e.setNullCheckNum(cnum);
-        stk++;
+        int b = push1(NULL_CHECK_END);
+        stack[b + E1] = cnum;
     }
 
     protected final void pushCallFrame(int pat) {
-        StackEntry e = ensure1();
-        e.type = CALL_FRAME;
-        e.setCallFrameRetAddr(pat);
-        stk++;
+        int b = push1(CALL_FRAME);
+        stack[b + E1] = pat;
     }
 
     protected final void pushReturn() {
-        StackEntry e = ensure1();
-        e.type = RETURN;
-        stk++;
+        pushType(RETURN);
     }
 
     protected final void pushAbsent() {
-        StackEntry e = ensure1();
-        e.type = ABSENT;
-        stk++;
+        pushType(ABSENT);
     }
 
     protected final void pushAbsentPos(int start, int end) {
-        StackEntry e = ensure1();
-        e.type = ABSENT_POS;
-        e.setAbsentStr(start);
-        e.setAbsentEndStr(end);
-        stk++;
+        int b = push1(ABSENT_POS);
+        stack[b + E1] = start;
+        stack[b + E2] = end;
     }
 
     protected final void popOne() {
         stk--;
     }
 
-    protected final StackEntry pop() {
+    // returns the index of the popped entry
+    protected final int pop() {
+        if (Config.USE_METRICS && metrics != null) metrics.pops++;
         switch (regex.stackPopLevel) {
         case StackPopLevel.FREE:
             return popFree();
@@ -343,70 +414,70 @@ abstract class StackMachine extends Matcher implements StackType {
         }
     }
 
-    private StackEntry popFree() {
+    private int popFree() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if ((e.type & MASK_POP_USED) != 0) {
-                return e;
+            int type = getType(--stk);
+            if ((type & MASK_POP_USED) != 0) {
+                return stk;
             } else if (USE_CEC) {
-                if (e.type == STATE_CHECK_MARK) stateCheckMark();
+                if (type == STATE_CHECK_MARK) stateCheckMark();
             }
         }
     }
 
-    private StackEntry popMemStart() {
+    private int popMemStart() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if ((e.type & MASK_POP_USED) != 0) {
-                return e;
-            } else if (e.type == MEM_START) {
-                repeatStk[memStartStk + e.getMemNum()] = e.getMemStart();
-                repeatStk[memEndStk + e.getMemNum()] = e.getMemEnd();
+            int type = getType(--stk);
+            if ((type & MASK_POP_USED) != 0) {
+                return stk;
+            } else if (type == MEM_START) {
+                repeatStk[memStartStk + getMemNum(stk)] = getMemPrevStart(stk);
+                repeatStk[memEndStk + getMemNum(stk)] = getMemPrevEnd(stk);
             } else if (USE_CEC) {
-                if (e.type == STATE_CHECK_MARK) stateCheckMark();
+                if (type == STATE_CHECK_MARK) stateCheckMark();
             }
         }
     }
 
-    private void popRewrite(StackEntry e) {
-        if (e.type == MEM_START) {
-            repeatStk[memStartStk + e.getMemNum()] = e.getMemStart();
-            repeatStk[memEndStk + e.getMemNum()] = e.getMemEnd();
-        } else if (e.type == REPEAT_INC) {
-            stack[e.getSi()].decreaseRepeatCount();
-        } else if (e.type == MEM_END) {
-            repeatStk[memStartStk + e.getMemNum()] = e.getMemStart();
-            repeatStk[memEndStk + e.getMemNum()] = e.getMemEnd();
+    private void popRewrite(int type) {
+        if (type == MEM_START) {
+            repeatStk[memStartStk + getMemNum(stk)] = getMemPrevStart(stk);
+            repeatStk[memEndStk + getMemNum(stk)] = getMemPrevEnd(stk);
+        } else if (type == REPEAT_INC) {
+            stack[getSi(stk) * FRAME_SIZE + E1]--; /* decrease repeat count */
+        } else if (type == MEM_END) {
+            repeatStk[memStartStk + getMemNum(stk)] = getMemPrevStart(stk);
+            repeatStk[memEndStk + getMemNum(stk)] = getMemPrevEnd(stk);
         } else if (USE_CEC) {
-            if (e.type == STATE_CHECK_MARK) stateCheckMark();
+            if (type == STATE_CHECK_MARK) stateCheckMark();
         }
     }
 
-    private StackEntry popDefault() {
+    private int popDefault() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if ((e.type & MASK_POP_USED) != 0) return e; else popRewrite(e);
+            int type = getType(--stk);
+            if ((type & MASK_POP_USED) != 0) return stk; else popRewrite(type);
         }
     }
 
     protected final void popTilPosNot() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if (e.type == POS_NOT) break; else popRewrite(e);
+            int type = getType(--stk);
+            if (type == POS_NOT) break; else popRewrite(type);
         }
     }
 
     protected final void popTilLookBehindNot() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if (e.type == LOOK_BEHIND_NOT) break; else popRewrite(e);
+            int type = getType(--stk);
+            if (type == LOOK_BEHIND_NOT) break; else popRewrite(type);
         }
     }
 
     protected final void popTilAbsent() {
         while (true) {
-            StackEntry e = stack[--stk];
-            if (e.type == ABSENT) break; else popRewrite(e);
+            int type = getType(--stk);
+            if (type == ABSENT) break; else popRewrite(type);
         }
     }
 
@@ -414,11 +485,11 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
-            if ((e.type & MASK_TO_VOID_TARGET) != 0) {
-                e.type = VOID;
-            } else if (e.type == POS) {
-                e.type = VOID;
+            int type = getType(k);
+            if ((type & MASK_TO_VOID_TARGET) != 0) {
+                setType(k, VOID);
+            } else if (type == POS) {
+                setType(k, VOID);
                 break;
             }
         }
@@ -429,12 +500,12 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if ((e.type & MASK_TO_VOID_TARGET) != 0) {
-                e.type = VOID;
-            } else if (e.type == STOP_BT) {
-                e.type = VOID;
+            if ((type & MASK_TO_VOID_TARGET) != 0) {
+                setType(k, VOID);
+            } else if (type == STOP_BT) {
+                setType(k, VOID);
                 break;
             }
         }
@@ -445,11 +516,9 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
-
-            if (e.type == NULL_CHECK_START) {
-                if (e.getNullCheckNum() == id) {
-                    return e.getNullCheckPStr() == s ? 1 : 0;
+            if (getType(k) == NULL_CHECK_START) {
+                if (getNullCheckNum(k) == id) {
+                    return getNullCheckPStr(k) == s ? 1 : 0;
                 }
             }
         }
@@ -460,17 +529,17 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if (e.type == NULL_CHECK_START) {
-                if (e.getNullCheckNum() == id) {
+            if (type == NULL_CHECK_START) {
+                if (getNullCheckNum(k) == id) {
                     if (level == 0) {
-                        return e.getNullCheckPStr() == s ? 1 : 0;
+                        return getNullCheckPStr(k) == s ? 1 : 0;
                     } else {
                         level--;
                     }
                 }
-            } else if (e.type == NULL_CHECK_END) {
+            } else if (type == NULL_CHECK_END) {
                 level++;
             }
         }
@@ -481,29 +550,28 @@ abstract class StackMachine extends Matcher implements StackType {
         int isNull;
         while (true) {
             k--;
-            StackEntry e = stack[k];
 
-            if (e.type == NULL_CHECK_START) {
-                if (e.getNullCheckNum() == id) {
-                    if (e.getNullCheckPStr() != s) {
+            if (getType(k) == NULL_CHECK_START) {
+                if (getNullCheckNum(k) == id) {
+                    if (getNullCheckPStr(k) != s) {
                         isNull = 0;
                         break;
                     } else {
                         int endp;
                         isNull = 1;
                         while (k < stk) {
-                            e = stack[k++];
-                            if (e.type == MEM_START) {
-                                if (e.getMemEnd() == INVALID_INDEX) {
+                            int e = k++;
+                            if (getType(e) == MEM_START) {
+                                if (getMemPrevEnd(e) == INVALID_INDEX) {
                                     isNull = 0;
                                     break;
                                 }
-                                if (bsAt(regex.btMemEnd, e.getMemNum())) {
-                                    endp = stack[e.getMemEnd()].getMemPStr();
+                                if (bsAt(regex.btMemEnd, getMemNum(e))) {
+                                    endp = getMemPStr(getMemPrevEnd(e));
                                 } else {
-                                    endp = e.getMemEnd();
+                                    endp = getMemPrevEnd(e);
                                 }
-                                if (stack[e.getMemStart()].getMemPStr() != endp) {
+                                if (getMemPStr(getMemPrevStart(e)) != endp) {
                                     isNull = 0;
                                     break;
                                 } else if (endp != s) {
@@ -525,29 +593,29 @@ abstract class StackMachine extends Matcher implements StackType {
         int isNull;
         while (true) {
             k--;
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if (e.type == NULL_CHECK_START) {
-                if (e.getNullCheckNum() == id) {
+            if (type == NULL_CHECK_START) {
+                if (getNullCheckNum(k) == id) {
                     if (level == 0) {
-                        if (e.getNullCheckPStr() != s) {
+                        if (getNullCheckPStr(k) != s) {
                             isNull = 0;
                             break;
                         } else {
                             int endp;
                             isNull = 1;
                             while (k < stk) {
-                                if (e.type == MEM_START) {
-                                    if (e.getMemEnd() == INVALID_INDEX) {
+                                if (getType(k) == MEM_START) {
+                                    if (getMemPrevEnd(k) == INVALID_INDEX) {
                                         isNull = 0;
                                         break;
                                     }
-                                    if (bsAt(regex.btMemEnd, e.getMemNum())) {
-                                        endp = stack[e.getMemEnd()].getMemPStr();
+                                    if (bsAt(regex.btMemEnd, getMemNum(k))) {
+                                        endp = getMemPStr(getMemPrevEnd(k));
                                     } else {
-                                        endp = e.getMemEnd();
+                                        endp = getMemPrevEnd(k);
                                     }
-                                    if (stack[e.getMemStart()].getMemPStr() != endp) {
+                                    if (getMemPStr(getMemPrevStart(k)) != endp) {
                                         isNull = 0;
                                         break;
                                     } else if (endp != s) {
@@ -555,7 +623,6 @@ abstract class StackMachine extends Matcher implements StackType {
                                     }
                                 }
                                 k++;
-                                e = stack[k];
                             }
                             break;
                         }
@@ -563,8 +630,8 @@ abstract class StackMachine extends Matcher implements StackType {
                         level--;
                     }
                 }
-            } else if (e.type == NULL_CHECK_END) {
-                if (e.getNullCheckNum() == id) level++;
+            } else if (type == NULL_CHECK_END) {
+                if (getNullCheckNum(k) == id) level++;
             }
         }
         return isNull;
@@ -575,15 +642,15 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if (e.type == REPEAT) {
+            if (type == REPEAT) {
                 if (level == 0) {
-                    if (e.getRepeatNum() == id) return k;
+                    if (getRepeatNum(k) == id) return k;
                 }
-            } else if (e.type == CALL_FRAME) {
+            } else if (type == CALL_FRAME) {
                 level--;
-            } else if (e.type == RETURN) {
+            } else if (type == RETURN) {
                 level++;
             }
         }
@@ -594,15 +661,15 @@ abstract class StackMachine extends Matcher implements StackType {
         int k = stk;
         while (true) {
             k--;
-            StackEntry e = stack[k];
+            int type = getType(k);
 
-            if (e.type == CALL_FRAME) {
+            if (type == CALL_FRAME) {
                 if (level == 0) {
-                    return e.getCallFrameRetAddr();
+                    return getCallFrameRetAddr(k);
                 } else {
                     level--;
                 }
-            } else if (e.type == RETURN) {
+            } else if (type == RETURN) {
                 level++;
             }
         }
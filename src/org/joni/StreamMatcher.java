@@ -0,0 +1,254 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.jcodings.Encoding;
+
+/**
+ * Searches input that arrives in chunks, reporting the same non-overlapping matches a search over
+ * the whole input would, at absolute offsets.
+ *
+ * Only the bytes a later match may still need are retained: the tail a match starting there could span,
+ * as given by {@link Regex#getMaxMatchLength()}, plus what look-ahead, look-behind and anchors read
+ * around it. Patterns without a bounded match length need an explicit window, the longest match the
+ * caller expects. Results are exact as long as no match is longer, one found to be raises an
+ * IllegalStateException. \G anchors at the start of each search step and is not meaningful here.
+ *
+ * Direct and memory mapped buffers as well as channels are read straight into the window, so large inputs
+ * are searched without being copied to the heap as a whole.
+ *
+ * A stream matcher is not thread safe.
+ */
+public final class StreamMatcher {
+    public interface Callback {
+        void match(StreamMatcher matcher, long begin, long end);
+    }
+
+    private final Regex regex;
+    private final Encoding enc;
+    private final int window;       // max match length allowed when the pattern is unbounded, -1 otherwise
+    private final int ahead;        // bytes needed past a start for its result to be final
+    private final int behind;       // bytes kept before the next start
+    private final Matcher matcher;
+
+    private byte[]buf;
+    private int len;
+    private int pos;                // next search start in buf
+    private int complete;           // end of the complete characters in buf
+    private long offset;            // absolute offset of buf[0]
+    private boolean finished;
+
+    public StreamMatcher(Regex regex) {
+        this(regex, -1);
+    }
+
+    public StreamMatcher(Regex regex, int window) {
+        int maxLength = regex.getMaxMatchLength();
+        if (maxLength == -1) {
+            if (window <= 0) throw new IllegalArgumentException("pattern match length is unbounded, a window is required");
+        } else {
+            window = -1;
+        }
+        this.regex = regex;
+        this.enc = regex.enc;
+        this.window = window;
+        int margin = 2 * enc.maxLength(); // a char checked by anchors and its line terminator
+        if (window == -1) {
+            ahead = MinMaxLen.distanceAdd(MinMaxLen.distanceAdd(maxLength, regex.lookAroundLength), margin);
+            behind = MinMaxLen.distanceAdd(regex.lookAroundLength, margin);
+        } else {
+            ahead = MinMaxLen.distanceAdd(window, margin);
+            behind = ahead;
+        }
+        if (ahead == MinMaxLen.INFINITE_DISTANCE || behind == MinMaxLen.INFINITE_DISTANCE) throw new IllegalArgumentException("window too large: " + window);
+        buf = new byte[Math.max((ahead + behind) << 1, 4096)];
+        matcher = regex.matcher(buf, 0, 0);
+    }
+
+    public Regex getRegex() {
+        return regex;
+    }
+
+    /**
+     * Absolute offset of the end of the input fed so far.
+     */
+    public long getPosition() {
+        return offset + len;
+    }
+
+    /**
+     * Absolute begin of a group of the match being reported, -1 if it did not participate.
+     */
+    public long getGroupBegin(int group) {
+        Region region = matcher.getRegion();
+        int beg = region == null ? (group == 0 ? matcher.getBegin() : -1) : region.getBeg(group);
+        return beg < 0 ? -1 : offset + beg;
+    }
+
+    /**
+     * Absolute end of a group of the match being reported, -1 if it did not participate.
+     */
+    public long getGroupEnd(int group) {
+        Region region = matcher.getRegion();
+        int end = region == null ? (group == 0 ? matcher.getEnd() : -1) : region.getEnd(group);
+        return end < 0 ? -1 : offset + end;
+    }
+
+    public void feed(byte[]bytes, Callback callback) {
+        feed(bytes, 0, bytes.length, callback);
+    }
+
+    public void feed(byte[]bytes, int p, int end, Callback callback) {
+        if (finished) throw new IllegalStateException("stream already finished");
+        int length = end - p;
+        if (len + length > buf.length) compact(length);
+        System.arraycopy(bytes, p, buf, len, length);
+        len += length;
+        search(false, callback);
+    }
+
+    /**
+     * Feeds the remaining bytes of a buffer, leaving its position at its limit.
+     */
+    public void feed(ByteBuffer buffer, Callback callback) {
+        if (finished) throw new IllegalStateException("stream already finished");
+        int chunk = chunkSize();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), chunk);
+            if (len + length > buf.length) compact(length);
+            buffer.get(buf, len, length);
+            len += length;
+            search(false, callback);
+        }
+    }
+
+    /**
+     * Feeds the remaining input of a stream and finishes, the stream is not closed.
+     */
+    public void feed(InputStream in, Callback callback) throws IOException {
+        if (finished) throw new IllegalStateException("stream already finished");
+        int chunk = chunkSize();
+        while (true) {
+            if (len + chunk > buf.length) compact(chunk);
+            int n = in.read(buf, len, chunk);
+            if (n == -1) break;
+            len += n;
+            search(false, callback);
+        }
+        finish(callback);
+    }
+
+    /**
+     * Feeds the remaining input of a blocking channel and finishes, the channel is not closed.
+     */
+    public void feed(ReadableByteChannel in, Callback callback) throws IOException {
+        if (finished) throw new IllegalStateException("stream already finished");
+        int chunk = chunkSize();
+        while (true) {
+            if (len + chunk > buf.length) compact(chunk);
+            int n = in.read(ByteBuffer.wrap(buf, len, chunk));
+            if (n == -1) break;
+            len += n;
+            search(false, callback);
+        }
+        finish(callback);
+    }
+
+    private int chunkSize() {
+        return Math.max(ahead, 8192);
+    }
+
+    /**
+     * Signals the end of input, reporting the matches that needed it.
+     */
+    public void finish(Callback callback) {
+        if (finished) return;
+        search(true, callback);
+        finished = true;
+    }
+
+    private void search(boolean last, Callback callback) {
+        int end = last ? len : charEnd();
+        matcher.reset(buf, 0, end);
+        while (pos <= end) {
+            int limit = last ? end : end - ahead; // last start whose result can't change
+            if (limit < pos) return;
+            int s = matcher.search(pos, last ? end : limit + 1, Option.NONE);
+            if (s == Matcher.FAILED) {
+                if (last) {
+                    pos = end + 1;
+                } else {
+                    int p = pos;
+                    while (p <= limit) p += charLength(p, end);
+                    pos = p;
+                }
+                return;
+            } else if (s < 0) {
+                throw new IllegalStateException((s == Matcher.RETRY_LIMIT_EXCEEDED ? "retry limit exceeded" : "search interrupted") + " searching from " + (offset + pos));
+            }
+            int e = matcher.getEnd();
+            if (window != -1 && (e - s > window || (!last && e == end))) {
+                throw new IllegalStateException("match at " + (offset + s) + " is longer than the window of " + window + " bytes");
+            }
+            callback.match(this, offset + s, offset + e);
+            pos = e > s ? e : s < end ? s + charLength(s, end) : end + 1;
+        }
+    }
+
+    // end of the last complete character, a chunk may end inside one
+    private int charEnd() {
+        if (enc.isSingleByte()) return complete = len;
+        int p = complete;
+        while (p < len) {
+            int n = enc.length(buf, p, len);
+            if (n < -1 || p + n > len) break; // needs more bytes, invalid ones are stepped over
+            p += n > 0 ? n : 1;
+        }
+        return complete = p;
+    }
+
+    private int charLength(int s, int end) {
+        int n = enc.length(buf, s, end);
+        return n <= 0 ? 1 : n;
+    }
+
+    // drop the bytes no later search can read and make room for length more
+    private void compact(int length) {
+        int keep = 0;
+        while (keep < pos - behind) {
+            int n = charLength(keep, complete);
+            if (keep + n > pos - behind) break;
+            keep += n;
+        }
+        int size = len - keep + length;
+        byte[]dst = size > buf.length ? new byte[Math.max(size, buf.length << 1)] : buf;
+        System.arraycopy(buf, keep, dst, 0, len - keep);
+        buf = dst;
+        len -= keep;
+        pos -= keep;
+        complete -= keep;
+        offset += keep;
+    }
+}
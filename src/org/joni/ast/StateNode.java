@@ -208,6 +208,18 @@ abstract class StateNode extends Node implements NodeStatus {
         state &= ~NST_BY_NUMBER;
     }
 
+    public boolean isAutoPossessive() {
+        return (state & NST_AUTO_POSSESSIVE) != 0;
+    }
+
+    public void setAutoPossessive() {
+        state |= NST_AUTO_POSSESSIVE;
+    }
+
+    public void clearAutoPossessive() {
+        state &= ~NST_AUTO_POSSESSIVE;
+    }
+
     @Override
     public String toString(int level) {
         return "\n  state: " + stateToString();
@@ -229,6 +241,7 @@ abstract class StateNode extends Node implements NodeStatus {
         if (isInRepeat()) states.append("IN_REPEAT ");
         if (isNestLevel()) states.append("NEST_LEVEL ");
         if (isByNumber()) states.append("BY_NUMBER ");
+        if (isAutoPossessive()) states.append("AUTO_POSSESSIVE ");
 
         return states.toString();
     }
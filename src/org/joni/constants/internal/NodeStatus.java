@@ -36,4 +36,5 @@ public interface NodeStatus {
     int NST_IN_REPEAT            = (1<<12);   /* STK_REPEAT is nested in stack. */
     int NST_NEST_LEVEL           = (1<<13);
     int NST_BY_NUMBER            = (1<<14);   /* {n,m} */
+    int NST_AUTO_POSSESSIVE      = (1<<15);   /* a*b ==> (?>a*)b */
 }
@@ -142,6 +142,9 @@ public interface OPCode {
     int EXACT1_IC_SB                  = 98;           /* single byte, N = 1, ignore case */
     int EXACTN_IC_SB                  = 99;           /* single byte,        ignore case */
 
+    int ALT_DISPATCH                  = 100;          /* push the alternatives viable at the next byte */
+    int LITERAL_TRIE                  = 101;          /* alternation of strings */
+
     String[] OpCodeNames = Config.DEBUG_COMPILE ? new String[] {
         "finish", /*OP_FINISH*/
         "end", /*OP_END*/
@@ -244,6 +247,9 @@ public interface OPCode {
 
         "exact1-ic-sb", /*OP_EXACT1_IC*/
         "exactn-ic-sb", /*OP_EXACTN_IC*/
+
+        "alt-dispatch", /*OP_ALT_DISPATCH*/
+        "literal-trie", /*OP_LITERAL_TRIE*/
     } : null;
 
     int[] OpCodeArgTypes = Config.DEBUG_COMPILE ? new int[] {
@@ -348,5 +354,8 @@ public interface OPCode {
 
         Arguments.SPECIAL, /*OP_EXACT1_IC*/
         Arguments.SPECIAL, /*OP_EXACTN_IC*/
+
+        Arguments.SPECIAL, /*OP_ALT_DISPATCH*/
+        Arguments.SPECIAL, /*OP_LITERAL_TRIE*/
     } : null;
 }
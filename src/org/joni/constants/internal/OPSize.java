@@ -71,6 +71,8 @@ public interface OPSize {
     int PUSH_ABSENT_POS               = OPCODE;
     int ABSENT                        = (OPCODE + RELADDR);
     int ABSENT_END                    = OPCODE;
+    int ALT_DISPATCH                  = (OPCODE + INDEX);
+    int LITERAL_TRIE                  = (OPCODE + INDEX);
 
     // #ifdef USE_COMBINATION_EXPLOSION_CHECK
     int STATE_CHECK                   = (OPCODE + STATE_CHECK_NUM);
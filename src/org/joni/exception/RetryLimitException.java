@@ -0,0 +1,9 @@
+package org.joni.exception;
+
+public class RetryLimitException extends InterruptedException {
+   private static final long serialVersionUID = 1L;
+
+   public RetryLimitException() {
+        super();
+    }
+}
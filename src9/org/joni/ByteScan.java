@@ -0,0 +1,73 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Byte scanning primitives used by the forward search strategies.
+ * Java 9+ version: eight bytes are tested per step with SWAR arithmetic on little endian long reads.
+ */
+final class ByteScan {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private ByteScan() {
+    }
+
+    // high bit set in every byte of word equal to the byte replicated in pattern, exact for the lowest one
+    private static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    static int indexOf(byte[]bytes, int p, int end, byte b) {
+        long pattern = (b & 0xffL) * ONES;
+        int s = p;
+        for (; s + 8 <= end; s += 8) {
+            long hits = matches((long)LONGS.get(bytes, s), pattern);
+            if (hits != 0) return s + (Long.numberOfTrailingZeros(hits) >>> 3);
+        }
+        for (; s < end; s++) {
+            if (bytes[s] == b) return s;
+        }
+        return -1;
+    }
+
+    static int indexOfAny(byte[]bytes, int p, int end, byte b1, byte b2, byte b3) {
+        long pattern1 = (b1 & 0xffL) * ONES;
+        long pattern2 = (b2 & 0xffL) * ONES;
+        long pattern3 = (b3 & 0xffL) * ONES;
+        int s = p;
+        for (; s + 8 <= end; s += 8) {
+            long word = (long)LONGS.get(bytes, s);
+            long hits = matches(word, pattern1) | matches(word, pattern2) | matches(word, pattern3);
+            if (hits != 0) return s + (Long.numberOfTrailingZeros(hits) >>> 3);
+        }
+        for (; s < end; s++) {
+            byte b = bytes[s];
+            if (b == b1 || b == b2 || b == b3) return s;
+        }
+        return -1;
+    }
+}
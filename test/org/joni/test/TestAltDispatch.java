@@ -0,0 +1,61 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Syntax;
+
+public class TestAltDispatch extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    @Override
+    public void test() throws Exception {
+        x2s("(?<!\\.)(?:GET|POST|PUT|PATCH|DELETE|HEAD)\\b", "x.GET PUT /", 6, 9);
+        ns("(?<!\\.)(?:GET|POST|PUT)(?!\\w)", "GETS .POST PUTx");
+        ns("(?>a|ab|abc)c", "abcc");
+        x2s("(?>ab|a|abc)c", "abcc", 0, 3);
+        x3s("(a|ab|abc|b)(c)\\2", "abcc", 0, 2, 1);
+        x2s("(?<=x)(?:a|b|c|)d", "xd", 1, 2);
+        x2s("(?=z)z(?:a|b|c|$)", "zbz", 0, 2);
+        x2s("(?<=b)z(?:a|b|c|$)", "zbz", 2, 3);
+        x2s("(?<!\\.)(?i:get|post|put)", "a.Get pUT", 6, 9);
+        x2s("(?<!\\.)(?i:k|x|y)", "\u212a", 0, 3);
+        x2s("(?<!x)(?:é|ü|a|ö)+", "xéüö", 3, 7);
+        x2s("(?<!-)(?:[0-9]+|[a-f]+x|\\w+y)", "-12 abcy", 2, 3);
+        x2s("(?<!-)(?:[0-9]+|[a-f]+x|\\w+y)", "-1 abcy", 3, 7);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestAutomaton extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private Regex regex(String pattern) throws Exception {
+        byte[] reg = pattern.getBytes(testEncoding());
+        return new Regex(reg, 0, reg.length, option(), encoding(), syntax());
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    @Override
+    public void test() throws Exception {
+        assertTrue(regex("(x+x+)+y").hasAutomaton(), "nested quantifiers run on the automaton");
+        assertTrue(regex("(a|aa)*$").hasAutomaton(), "alternation with anchors runs on the automaton");
+        assertTrue(!regex("(x+x+)+y").isLinear(), "nested quantifiers need a backtrack stack");
+        assertTrue(!regex("(a+)\\1").hasAutomaton(), "backreference needs backtracking");
+        assertTrue(!regex("(?<=a)b+").hasAutomaton(), "look-behind needs backtracking");
+        assertTrue(!regex("(?>a+)b").hasAutomaton(), "atomic group needs backtracking");
+        assertTrue(!regex("a*+a").hasAutomaton(), "possessive repeat needs backtracking");
+        assertTrue(regex("a*b").hasAutomaton(), "automatic possessification runs on the automaton");
+        assertTrue(regex("abc").isLinear() && !regex("abc").hasAutomaton(), "a plain string needs neither");
+        ns("a*+a", "aaa");
+        x2s("a*b", "aaab", 0, 4);
+
+        // these never finish when backtracking
+        String xs = repeat("x", 5000);
+        ns("(x+x+)+y", xs);
+        x2s("(x+x+)+y", xs + "y", 0, 5001);
+        ns("(a|aa)+$", repeat("a", 5000) + "!");
+        ns("^(\\w+\\s?)*$", repeat("word ", 1000) + "!");
+        x2s("a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?a?aaaaaaaaaaaaaaaaaaaaaaaaaaaaa",
+                "aaaaaaaaaaaaaaaaaaaaaaaaaaaaa", 0, 29);
+
+        // leftmost first priorities and captures
+        x2s("a|ab", "ab", 0, 1);
+        x2s("a*?b|a+", "aaa", 0, 3);
+        x2s("(?:a|ab)(?:c|bcd)", "abcd", 0, 4);
+        x3s("(a|ab)(c|bcd)", "abcd", 0, 1, 1);
+        x3s("(a|ab)(c|bcd)", "abcd", 1, 4, 2);
+        x3s("(?:(a)|b)*", "ab", 0, 1, 1);
+        x3s("(a)*", "aaa", 2, 3, 1);
+        x3s("(a)|b", "b", -1, -1, 1);
+        x2s("x{2,3}?", "xxxx", 0, 2);
+        x2s("(?:ab){2}c", "zababc", 1, 6);
+        x3s("\\b(\\w+)\\b$", "one two", 4, 7, 1);
+        x2s("(?m:a.+)b", "a\nxb", 0, 4);
+        x2s("(?i:straße)|x", "STRASSE", 0, 7);
+        x2s("[あ-ん]+|z", "zあいう", 0, 1);
+        x2s("[あ-ん]+", "xあいう", 1, 10);
+
+        // transitions over multibyte characters are cached, the cache must tell start states apart
+        x2s("(?:\\p{L}+ )+\\d", "привет мир привет 7", 0, 34);
+        x2s("(?:\\p{L}+ )+\\d", "— héllo wörld héllo 7", 4, 26);
+        ns("(?:\\p{L}+ )+\\d", repeat("привет ", 200) + "!");
+        x2s("(?:あい)+う", "あいあいあいあ あいう", 22, 31);
+
+        Regex regex = regex("(\\d+)-(\\d+)");
+        byte[] str = "ab 12-345 x".getBytes();
+        Matcher m = regex.matcher(str);
+        assertTrue(m.search(0, str.length, Option.NONE) == 3, "search");
+        assertTrue(m.getRegion().getBeg(2) == 6 && m.getRegion().getEnd(2) == 9, "search group 2");
+        assertTrue(m.match(3, str.length, Option.NONE) == 6, "match length");
+        assertTrue(m.match(2, str.length, Option.NONE) == Matcher.FAILED, "match failure");
+        assertTrue(m.search(str.length, 0, Option.NONE) == 4, "backward search");
+
+        // anything the automaton cannot step over runs on the byte code
+        byte[] broken = {'a', 'b', 'b', (byte)0xe3};
+        Matcher mb = regex("b+|c").matcher(broken);
+        assertTrue(mb.search(0, broken.length, Option.NONE) == 1 && mb.getEnd() == 3, "truncated subject");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestBacktrackComplexity extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private void complexity(String pattern, Encoding enc, int expected) {
+        byte[]p = pattern.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        int c = new Regex(p, 0, p.length, Option.NONE, enc).getBacktrackComplexity();
+        assertTrue(c == expected, "complexity of /" + pattern + "/: " + c + " expected: " + expected);
+    }
+
+    private void complexity(String pattern, int expected) {
+        complexity(pattern, ASCIIEncoding.INSTANCE, expected);
+    }
+
+    @org.junit.Test
+    @Override
+    public void test() throws Exception {
+        int exp = Regex.COMPLEXITY_EXPONENTIAL;
+
+        complexity("(a|a)*", exp);
+        complexity("(a+)+", exp);
+        complexity("(a|aa)+c", exp);
+        complexity("(\\w+\\s?)+$", exp);
+        complexity("(x+x+)+y", exp);
+        complexity("(?:a*b?a*)*c", exp);
+        complexity("(.*,)*z", exp);
+
+        complexity("\\d+\\d+$", 2);
+        complexity(".*x.*y", 2);
+        complexity("a*[ab]*c", 2);
+        complexity("a*a*c", 2);
+        complexity("(?:a*){3}$", 3);
+        complexity("\\s*#?\\s*$", 2);
+
+        complexity("\\s*#\\s*$", 1);
+        complexity("abc", 1);
+        complexity("(ab+)+", 1);
+        complexity("(a|ab)*c", 1);
+        complexity("(a|b)*c", 1);
+        complexity("a*+a*", 1);
+        complexity("(?>a+)+", 1);
+        complexity("\\d+x\\d+", 1);
+        complexity("(\\d+\\.)+\\d+", 1);
+        complexity("a*b*c*", 1);
+
+        complexity("(é|é)*", UTF8Encoding.INSTANCE, exp);
+        complexity("(é|ë)*", UTF8Encoding.INSTANCE, 1);
+        complexity("(\\p{L}+)+", UTF8Encoding.INSTANCE, exp);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.ByteFrequencies;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestByteFrequencies extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static boolean rareByte(String pattern) throws Exception {
+        byte[] bytes = pattern.getBytes("utf-8");
+        Regex regex = new Regex(bytes, 0, bytes.length, Option.DEFAULT, UTF8Encoding.INSTANCE);
+        return regex.optimizeInfoToString().startsWith("optimize: EXACT_RARE_BYTE_FORWARD");
+    }
+
+    @Override
+    public void test() throws Exception {
+        ByteFrequencies def = ByteFrequencies.DEFAULT;
+        assertTrue(def.rank(' ') == 255, "space is the most common byte");
+        assertTrue(def.rank('@') < def.rank('e'), "rank of @");
+
+        assertTrue(rareByte("\"id\":"), "json key anchors on a rare byte");
+        assertTrue(!rareByte("needle"), "common letters stay on boyer moore");
+
+        x2s("\"id\":", "{\"idx\":1,\"id\":2}", 9, 14);
+        x2s("user@host", "user@hos user@host", 9, 18);
+        x2s("\\d+@x", "1@y 22@x", 4, 8);
+        x2s("aé@", "é@aé@", 3, 7);
+        ns("@@x", "@@ @x @@");
+        ns("ab%", "ab");
+
+        ByteFrequencies trained = ByteFrequencies.train("the quick brown fox jumps over the lazy cat".getBytes("utf-8"));
+        assertTrue(trained.rank('d') < trained.rank('n') && trained.rank('n') < trained.rank('e'), "trained ranks");
+        ByteFrequencies.setDefault(trained);
+        try {
+            assertTrue(rareByte("needle"), "trained table picks a rare byte");
+            x2s("needle", "needl needle", 6, 12);
+        } finally {
+            ByteFrequencies.setDefault(def);
+        }
+        assertTrue(!rareByte("needle"), "default table restored");
+    }
+}
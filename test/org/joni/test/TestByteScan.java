@@ -0,0 +1,126 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.Random;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+/**
+ * The forward searches of short exact strings and of char-maps with up to three bytes scan with ByteScan, which
+ * reads eight bytes at a time on Java 9 and later: every alignment of the hits, starts, ends and ranges is checked
+ * against a plain loop. The versioned surefire execution runs this against the Java 9 classes.
+ */
+public class TestByteScan extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static final int LENGTH = 40;
+
+    private final Random random = new Random(8);
+
+    private byte[]subject(byte[]alphabet, int length) {
+        byte[]str = new byte[length];
+        for (int i = 0; i < length; i++) str[i] = alphabet[random.nextInt(alphabet.length)];
+        return str;
+    }
+
+    // first start in [p, range) of a match within [0, end), p alone when it is the range
+    private static int expected(byte[]str, int p, int end, int range, byte[]literal, byte[]set) {
+        for (int s = p; s < range || s == p; s++) {
+            if (literal != null) {
+                if (s + literal.length > end) return Matcher.FAILED;
+                int i = 0;
+                while (i < literal.length && str[s + i] == literal[i]) i++;
+                if (i == literal.length) return s;
+            } else {
+                if (s >= end) return Matcher.FAILED;
+                for (byte b : set) if (str[s] == b) return s;
+            }
+        }
+        return Matcher.FAILED;
+    }
+
+    private void check(String pattern, Encoding enc, byte[]literal, byte[]set, byte[]alphabet) throws Exception {
+        byte[]p = pattern.getBytes(testEncoding());
+        Regex regex = new Regex(p, 0, p.length, Option.NONE, enc, Syntax.DEFAULT);
+        String mismatch = mismatch(regex, literal, set, alphabet);
+        assertTrue(mismatch == null, "/" + pattern + "/ " + enc + mismatch);
+    }
+
+    private String mismatch(Regex regex, byte[]literal, byte[]set, byte[]alphabet) throws Exception {
+        for (int n = 0; n < 8; n++) {
+            byte[]str = subject(alphabet, n == 0 ? LENGTH : random.nextInt(LENGTH));
+            for (int end = 0; end <= str.length; end++) {
+                for (int start = 0; start <= end; start++) {
+                    for (int range = start; range <= end; range++) {
+                        int r = regex.matcher(str, 0, end).search(start, range, Option.NONE);
+                        int e = expected(str, start, end, range, literal, set);
+                        if (r != e) return " on " + repr(str) + " start " + start + " end " + end + " range " + range + ": " + r + " expected " + e;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void test() throws Exception {
+        if (Boolean.getBoolean("joni.test.versioned")) {
+            String location = Class.forName("org.joni.ByteScan").getProtectionDomain().getCodeSource().getLocation().getPath();
+            assertTrue(location.contains("versions/9"), "ByteScan loaded from " + location);
+        }
+
+        byte[]letters = "xyzqabcw".getBytes(testEncoding());
+        // bytes next to the ones scanned for catch borrows leaking into the next byte of a word
+        byte[]neighbours = {'p', 'q', 'r', 'a', 'x', 'y', 'z', '{', (byte)0xf1, (byte)0xf0, 1, 0, (byte)0xff, (byte)0x80};
+
+        for (Encoding enc : new Encoding[] {ASCIIEncoding.INSTANCE, UTF8Encoding.INSTANCE}) {
+            check("x", enc, "x".getBytes(), null, letters);             // exact
+            check("aqz", enc, "aqz".getBytes(), null, letters);         // rare byte at an offset
+            check("bq", enc, "bq".getBytes(), null, letters);
+            check("[xyz]", enc, null, "xyz".getBytes(), letters);       // char-map of three bytes
+            check("[xz]", enc, null, "xz".getBytes(), letters);
+        }
+        check("q", ASCIIEncoding.INSTANCE, "q".getBytes(), null, neighbours);
+        check("[\\x00\\xf0\\xff]", ASCIIEncoding.INSTANCE, null, new byte[] {0, (byte)0xf0, (byte)0xff}, neighbours);
+        check("[\\x80a]", ASCIIEncoding.INSTANCE, null, new byte[] {(byte)0x80, 'a'}, neighbours);
+    }
+}
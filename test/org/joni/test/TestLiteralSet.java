@@ -0,0 +1,60 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Syntax;
+
+public class TestLiteralSet extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    @Override
+    public void test() throws Exception {
+        x2s("apple|banana|cherry|date|elder", "xx cherry date", 3, 9);
+        x2s("a|ab|abc|abcd", "zabcd", 1, 2);
+        x2s("abcd|abc|ab|a", "zabcd", 1, 5);
+        x2s("(?:a|ab|abc|abcd)d", "abcd", 0, 4);
+        x3s("(one|two|three|four)\\1", "fourthreethree", 4, 9, 1);
+        x2s("(?>ab|a|abc|b)c", "abc", 0, 3);
+        ns("(?>a|ab|abc|bc)c", "abc");
+        x2s("(?:é|ü|ö|ab|b)x", "aébxüx", 3, 5);
+        x2s("(?:|x|y|z)y", "ay", 1, 2);
+        x2s("^(?:foo|bar|baz|qux)$", "baz", 0, 3);
+        ns("\\b(?:foo|bar|baz|qux)\\b", "foobar bazz");
+        x2s("(?:cat|dog|cow|hen)s?", "a cows", 2, 6);
+    }
+}
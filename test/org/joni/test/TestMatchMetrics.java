@@ -0,0 +1,134 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.joni.Config;
+import org.joni.MatchMetrics;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestMatchMetrics extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static byte[]bytes(String s) {
+        return s.getBytes();
+    }
+
+    private static Regex regex(String pattern) {
+        byte[]p = bytes(pattern);
+        return new Regex(p, 0, p.length, Option.NONE, ASCIIEncoding.INSTANCE);
+    }
+
+    private static final class Reports implements MatchMetrics.Listener {
+        final List<String> reports = new ArrayList<>();
+        MatchMetrics last;
+
+        @Override
+        public void report(Regex regex, MatchMetrics metrics) {
+            reports.add(metrics.toString());
+            last = metrics;
+        }
+    }
+
+    @org.junit.Test
+    @Override
+    public void test() throws Exception {
+        Reports reports = new Reports();
+        if (!Config.USE_METRICS) {
+            try {
+                regex("abc").setMatchListener(reports);
+                assertTrue(false, "IllegalStateException expected");
+            } catch (IllegalStateException e) {
+            }
+            return;
+        }
+
+        byte[]str = bytes("xxxxxxxxabc");
+        Matcher matcher = regex("abc").matcher(str);
+        matcher.setMatchListener(reports);
+        assertTrue(matcher.search(0, str.length, Option.NONE) == 8, "exact string not found");
+        assertTrue(reports.reports.size() == 1, "one report per search expected");
+        assertTrue(reports.last.getResult() == 8, "result not reported");
+        assertTrue(reports.last.getBytesScanned() == 8, "bytes scanned by the exact search: " + reports.last);
+        assertTrue(reports.last.getMatchAttempts() == 1, "one match attempt expected: " + reports.last);
+        assertTrue(matcher.match(0, str.length, Option.NONE) == Matcher.FAILED, "no match at 0");
+        assertTrue(reports.reports.size() == 2 && reports.last.getBytesScanned() == 0, "match not reported");
+
+        // the look-ahead keeps the pattern on the backtracking machine
+        str = bytes("ababababx");
+        matcher = regex("(?=a)(a|b)*c").matcher(str);
+        matcher.setMatchListener(reports);
+        assertTrue(matcher.search(0, str.length, Option.NONE) == Matcher.FAILED, "unexpected match");
+        MatchMetrics m = reports.last;
+        assertTrue(m.getResult() == Matcher.FAILED, "failure not reported");
+        assertTrue(m.getMatchAttempts() == 4, "attempts at each a expected: " + m);
+        assertTrue(m.getPushes() > 0 && m.getPops() > 0 && m.getMaxStackDepth() > 8, "backtracking not counted: " + m);
+        assertTrue(m.getOpcodes() > m.getPops(), "opcodes not counted: " + m);
+
+        matcher.setMatchListener(null);
+        int n = reports.reports.size();
+        matcher.search(0, str.length, Option.NONE);
+        assertTrue(reports.reports.size() == n, "reported without a listener");
+
+        // defaults of the regex apply to its new matchers
+        Regex exponential = regex("^(?=a)()\\1(a|aa)+c");
+        exponential.setMatchListener(reports);
+        str = bytes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabc");
+        matcher = exponential.matcher(str);
+        matcher.setRetryLimitInMatch(1000);
+        assertTrue(matcher.search(0, str.length, Option.NONE) == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit not reached");
+        assertTrue(reports.last.isRetryLimitExceeded() && reports.last.getResult() == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit not reported");
+
+        matcher = exponential.matcher(str);
+        matcher.setTimeout(1);
+        assertTrue(matcher.search(0, str.length, Option.NONE) == Matcher.INTERRUPTED, "timeout not reached");
+        assertTrue(reports.last.isTimedOut() && !reports.last.isInterrupted(), "timeout not reported");
+
+        matcher = exponential.matcher(str);
+        matcher.interrupt();
+        try {
+            matcher.searchInterruptible(0, str.length, Option.NONE);
+            assertTrue(false, "InterruptedException expected");
+        } catch (InterruptedException e) {
+        }
+        assertTrue(reports.last.isInterrupted() && reports.last.getResult() == Matcher.INTERRUPTED, "interrupt not reported");
+    }
+}
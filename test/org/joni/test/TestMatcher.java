@@ -0,0 +1,157 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.Arrays;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Region;
+import org.joni.Syntax;
+
+public class TestMatcher extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private Regex regex(String pattern) throws Exception {
+        byte[] reg = pattern.getBytes(testEncoding());
+        return new Regex(reg, 0, reg.length, option(), encoding(), syntax());
+    }
+
+    @Override
+    public void test() throws Exception {
+        testReset();
+        testScan();
+        testLazyRegion();
+    }
+
+    private void testReset() throws Exception {
+        Regex regex = regex("(a+)(b)?");
+        byte[] s1 = "xxaab".getBytes();
+        byte[] s2 = "--a-".getBytes();
+
+        Matcher m = regex.matcher(s1);
+        Region region = m.getRegion();
+        assertTrue(m.search(0, s1.length, Option.NONE) == 2, "reset: first search");
+        assertTrue(region.getBeg(2) == 4 && region.getEnd(2) == 5, "reset: group 2 in first subject");
+
+        assertTrue(m.reset(s2) == m, "reset returns the same matcher");
+        assertTrue(m.getRegion() == region, "reset keeps the region");
+        assertTrue(region.getBeg(0) == -1 && region.getBeg(2) == -1, "reset clears the region");
+
+        assertTrue(m.search(0, s2.length, Option.NONE) == 2, "reset: second search");
+        assertTrue(region.getBeg(1) == 2 && region.getEnd(1) == 3, "reset: group 1 in second subject");
+        assertTrue(region.getBeg(2) == -1, "reset: stale group 2");
+
+        m.reset(s1, 3, 5);
+        // positions are relative to p
+        assertTrue(m.search(3, 5, Option.NONE) == 0 && m.getEnd() == 2, "reset: sub range");
+        assertTrue(m.match(3, 5, Option.NONE) == 2, "reset: match");
+
+        m.interrupt();
+        m.reset(s2);
+        assertTrue(m.search(0, s2.length, Option.NONE) == 2, "reset clears a pending interrupt");
+
+        Matcher nr = regex("a+").matcherNoRegion(s1);
+        nr.reset(s2, 0, s2.length);
+        assertTrue(nr.search(0, s2.length, Option.NONE) == 2 && nr.getEnd() == 3, "reset without region");
+    }
+
+    private void pairs(int[]result, int[]expected, String what) {
+        assertTrue(Arrays.equals(result, expected), what + ": " + Arrays.toString(result) + " expected: " + Arrays.toString(expected));
+    }
+
+    private void testScan() throws Exception {
+        byte[] s = "xaaybaa".getBytes();
+        Matcher m = regex("(a)(a)?").matcher(s);
+        final StringBuilder groups = new StringBuilder();
+        int n = m.scan(0, s.length, Option.NONE, new Matcher.Callback() {
+            public void match(Matcher matcher, int begin, int end) {
+                groups.append(begin).append('-').append(end).append(':').append(matcher.getRegion().getBeg(2)).append(' ');
+            }
+        });
+        assertTrue(n == 2, "scan: count");
+        assertTrue(groups.toString().equals("1-3:2 5-7:6 "), "scan: reused region " + groups);
+        pairs(m.findAll(0, s.length, Option.NONE).toArray(), new int[] {1, 3, 5, 7}, "findAll");
+        pairs(m.findAll(2, 6, Option.NONE).toArray(), new int[] {2, 3, 5, 7}, "findAll: sub range");
+
+        byte[] u = "a\u00e9".getBytes("utf-8");
+        pairs(regex("").matcher(u).findAll(0, u.length, Option.NONE).toArray(), new int[] {0, 0, 1, 1, 3, 3}, "findAll: empty matches step over chars");
+        byte[] x = "axb".getBytes();
+        pairs(regex("x*").matcher(x).findAll(0, x.length, Option.NONE).toArray(), new int[] {0, 0, 1, 2, 2, 2, 3, 3}, "findAll: empty after non empty");
+
+        byte[] csv = ",a,,b".getBytes();
+        pairs(regex(",").matcher(csv).split(0, csv.length, Option.NONE).toArray(), new int[] {0, 0, 1, 2, 3, 3, 4, 5}, "split");
+        byte[] ab = "ab".getBytes();
+        pairs(regex("").matcher(ab).split(0, ab.length, Option.NONE).toArray(), new int[] {0, 1, 1, 2, 2, 2}, "split: empty separator");
+        pairs(regex("z").matcher(ab).split(0, ab.length, Option.NONE).toArray(), new int[] {0, 2}, "split: no match");
+        assertTrue(regex("a").matcher(ab).findAll(0, ab.length, Option.NONE).count() == 2, "findAll: count");
+
+        byte[] bab = "xxxbab".getBytes();
+        assertTrue(regex("\\sx?a|b").matcher(bab).search(4, 4, Option.NONE) == Matcher.FAILED, "search at a single position");
+
+        try {
+            m.findAll(3, 1, Option.NONE);
+            assertTrue(false, "IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private void testLazyRegion() throws Exception {
+        String[] patterns = {"(a|b)+c", "(?:(x)|(y))z(\\d+)?", "(?<w>\\w+)\\K-(\\w)", "((a*)*b)", "(?=(ab))a"};
+        byte[] s = "aabc yz12 foo-bar xz aab".getBytes();
+        for (String pattern : patterns) {
+            Regex regex = regex(pattern);
+            Matcher eager = regex.matcher(s);
+            Matcher none = regex.matcherNoRegion(s);
+            Matcher lazy = regex.matcherLazyRegion(s);
+            int start = 0;
+            while (true) {
+                int r = eager.search(start, s.length, Option.NONE);
+                assertTrue(none.search(start, s.length, Option.NONE) == r && none.getEnd() == eager.getEnd(), pattern + ": no region at " + start);
+                assertTrue(lazy.search(start, s.length, Option.NONE) == r && lazy.getRegion() == null, pattern + ": lazy at " + start);
+                if (r == Matcher.FAILED) break;
+                Region region = eager.getRegion();
+                assertTrue(lazy.getEagerRegion().toString().equals(region.toString()), pattern + ": groups " + lazy.getEagerRegion() + " expected: " + region);
+                start = eager.getEnd() > r ? eager.getEnd() : r + 1;
+            }
+        }
+
+        Regex back = regex("(a)\\1|\\Gb(c)");
+        assertTrue(back.matcherLazyRegion(s).getRegion() != null, "\\G patterns keep a region");
+    }
+}
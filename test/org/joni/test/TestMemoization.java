@@ -0,0 +1,106 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Region;
+import org.joni.Syntax;
+
+public class TestMemoization extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append(c);
+        return sb.toString();
+    }
+
+    // the retry limit bounds the work, without memoization these would need about 2^n retries
+    private void linear(String pattern, String str, int from, int to) {
+        byte[]p = pattern.getBytes();
+        byte[]s = str.getBytes();
+        Regex regex = new Regex(p, 0, p.length, Option.NONE, ASCIIEncoding.INSTANCE);
+        Matcher matcher = regex.matcher(s);
+        matcher.setRetryLimitInSearch(1000000);
+        int r = matcher.search(0, s.length, Option.NONE);
+        assertTrue(r == from && (r == Matcher.FAILED || matcher.getEnd() == to), "/" + pattern + "/ expected " + from + "-" + to + " was " + r + "-" + matcher.getEnd());
+    }
+
+    @org.junit.Test
+    @Override
+    public void test() throws Exception {
+        String as = repeat('a', 40);
+        linear("^(a|aa)+c", as + "b", Matcher.FAILED, 0);
+        linear("(a|aa)+c", as + "b", Matcher.FAILED, 0);
+        linear("(a|aa)+c", as + "baaaac", 41, 46);
+        linear("(a*)*c", as + "b", Matcher.FAILED, 0);
+        linear("(?=a)(a|a)*c", as + "b", Matcher.FAILED, 0);
+        linear("(\\w+\\s?)+$", repeat('x', 30) + "!", Matcher.FAILED, 0);
+        linear(".*.*.*=.*x", repeat('=', 200), Matcher.FAILED, 0);
+        linear("(?=a)(?:a|aa)+c(?:xy|z){3,200}", repeat('a', 34) + "bc", Matcher.FAILED, 0);
+        linear("(?:a|aa)+c(?:xy|z){3,200}", as + "czzz", 0, 44);
+        linear("(?:x{2,3}|y)(a|aa)+c", "xx" + as + "b", Matcher.FAILED, 0);
+        linear("(?=(a|aa)+c)", as + "b", Matcher.FAILED, 0);
+        linear("(?=(a|aa)+c)", as + "c", 0, 0);
+        linear("(?!(a|aa)+c)", as + "c", 40, 40);
+        linear("(?>(a|aa)+c|b)", as + "b", 40, 41);
+        linear("(?<!b)(?:(?=(a|aa)+b)a)+c", as + "bc", Matcher.FAILED, 0);
+        // the b's turn memoization on, the look-ahead succeeds at 25 and has to again at 26
+        linear("(?=(?:a|aa)+c)aac|(?:b|bb)+x", repeat('b', 25) + "aaac", 26, 29);
+        linear("(?>(?:a|aa)+c)|(?:b|bb)+x", repeat('b', 25) + "aaac", 25, 29);
+
+        // captures and look-arounds still come out as without memoization
+        byte[]p = "((a|aa)+)(?<=a)c".getBytes();
+        byte[]s = (as + "baaaac").getBytes();
+        Regex regex = new Regex(p, 0, p.length, Option.NONE, ASCIIEncoding.INSTANCE);
+        Matcher matcher = regex.matcher(s);
+        assertTrue(matcher.search(0, s.length, Option.NONE) == 41, "match expected at 41");
+        Region region = matcher.getEagerRegion();
+        assertTrue(region.getBeg(1) == 41 && region.getEnd(1) == 45, "group 1 expected at 41-45");
+        assertTrue(region.getBeg(2) == 44 && region.getEnd(2) == 45, "group 2 expected at 44-45");
+
+        x2s("(a|ab)(c|bcd)(d*)", "abcd", 0, 4);
+        x2s("(?:a+|b)*c", "aabac", 0, 5);
+        ns("(?:a|aa)+(?!a)b", as + "c");
+        x2s("(?=(a|aa)+c)a+", "aab aac", 4, 6);
+        x2s("(?!(a|aa)+c)a", "aac aab", 4, 5);
+        x2s("(?:(?=(?:a|aa)+b)a)+", "aaac aab", 5, 7);
+        x2s("(?:ab|a){2,3}b", "ababab aab", 0, 6);
+    }
+}
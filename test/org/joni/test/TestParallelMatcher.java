@@ -0,0 +1,97 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.ParallelMatcher;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestParallelMatcher extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private Regex regex(String pattern) throws Exception {
+        byte[] reg = pattern.getBytes(testEncoding());
+        return new Regex(reg, 0, reg.length, option(), encoding(), syntax());
+    }
+
+    private void findAll(ForkJoinPool pool, String pattern, String subject) throws Exception {
+        Regex regex = regex(pattern);
+        byte[] str = ("--" + subject + "--").getBytes(testEncoding());
+        int p = 2, end = str.length - 2;
+        int[] expected = regex.matcher(str, p, end).findAll(p, end, Option.NONE).toArray();
+        for (int chunk = 1; chunk <= 9; chunk += 2) {
+            int[] found = new ParallelMatcher(regex, pool, chunk).findAll(str, p, end);
+            assertTrue(Arrays.equals(found, expected), "/" + pattern + "/ chunk " + chunk + ": " + Arrays.toString(found) + " expected " + Arrays.toString(expected));
+        }
+    }
+
+    @Override
+    public void test() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            String subject = "aab abab bé aaaa\nba x aéb\n\nabbba b";
+            findAll(pool, "a", subject);
+            findAll(pool, "a+", subject);
+            findAll(pool, "", subject);
+            findAll(pool, "x*", subject);
+            findAll(pool, "b*", subject);
+            findAll(pool, "\\w+\\s", subject);
+            findAll(pool, "(?<=a)b", subject);
+            findAll(pool, "é", subject);
+            findAll(pool, "a.*?b", subject);
+            findAll(pool, "a[^\\n]*b", subject);
+            findAll(pool, "^\\w+", subject);
+            findAll(pool, "\\Ga", subject);
+            findAll(pool, "(?:ab)+|a", subject);
+            findAll(pool, "z", subject);
+            findAll(pool, "b$", subject);
+            findAll(pool, "(?:ab)*x?a*", " aéaab x\néxéxaaab");
+
+            try {
+                new ParallelMatcher(regex("a"), pool, 0);
+                assertTrue(false, "IllegalArgumentException expected");
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.RegexBundle;
+import org.joni.Region;
+import org.joni.Syntax;
+
+public class TestRegexBundle extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static final String[] PATTERNS = {
+        "abc", "hello world", "(?i)straße", "[a-c]+x", "(?<year>\\d{4})-(?<month>\\d\\d)", "(?<x>a)|(?<x>b)",
+        "a{2,5}b", "(a|b)*\\1", "(?<=é)\\w+", "^foo$", "\\Gab", "x(?=y)", "(?:ab){3,}", "\\bword\\b",
+        "(?~abc)", "a.*b.*c", "[^\\p{L}]+", "(a+)+z", "\\Aé+\\z", "(?i)xyz{2,3}"
+    };
+
+    private static final String SUBJECT = "abcabcab xy hello world 2024-05 STRASSE wordé ééé aaaaab bbabbx ababab foo\nxyzzz";
+
+    private static String results(Regex regex, byte[] str) {
+        StringBuilder sb = new StringBuilder();
+        Matcher m = regex.matcher(str);
+        for (int s = 0; s <= str.length; s++) {
+            int r = m.search(s, str.length, Option.NONE);
+            sb.append(r);
+            Region region = m.getRegion();
+            if (r >= 0 && region != null) {
+                for (int i = 0; i < region.getNumRegs(); i++) sb.append(',').append(region.getBeg(i)).append('-').append(region.getEnd(i));
+            } else if (r >= 0) {
+                sb.append(',').append(m.getEnd());
+            }
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static boolean onAutomaton(Regex regex, byte[] str) {
+        return regex.matcher(str).getClass().getSimpleName().equals("AutomatonMachine");
+    }
+
+    @Override
+    public void test() throws Exception {
+        List<Regex> regexes = new ArrayList<Regex>();
+        for (String pattern : PATTERNS) {
+            byte[] p = pattern.getBytes(testEncoding());
+            regexes.add(new Regex(p, 0, p.length, option(), encoding(), syntax()));
+        }
+        regexes.add(new Regex("ab+c".getBytes(), 0, 4, Option.IGNORECASE, ASCIIEncoding.INSTANCE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RegexBundle.writeAll(out, regexes);
+        byte[] bundle = out.toByteArray();
+        Regex[] loaded = RegexBundle.readAll(new ByteArrayInputStream(bundle));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bundle.length);
+        direct.put(bundle).flip();
+        Regex[] mapped = RegexBundle.readAll(direct);
+
+        byte[] str = SUBJECT.getBytes(testEncoding());
+        assertTrue(loaded.length == regexes.size() && mapped.length == regexes.size(), "bundle size");
+        for (int i = 0; i < loaded.length; i++) {
+            Regex regex = regexes.get(i);
+            String expected = results(regex, str);
+            String what = i < PATTERNS.length ? PATTERNS[i] : "ab+c";
+            assertTrue(results(loaded[i], str).equals(expected), "/" + what + "/ loaded from a stream");
+            assertTrue(results(mapped[i], str).equals(expected), "/" + what + "/ loaded from a buffer");
+            assertTrue(loaded[i].numberOfNames() == regex.numberOfNames() && loaded[i].getEncoding() == regex.getEncoding(), "/" + what + "/ names and encoding");
+            assertTrue(loaded[i].getBacktrackComplexity() == regex.getBacktrackComplexity() && loaded[i].isLinear() == regex.isLinear() && loaded[i].hasAutomaton() == regex.hasAutomaton(), "/" + what + "/ analysis");
+            assertTrue(onAutomaton(loaded[i], str) == onAutomaton(regex, str), "/" + what + "/ machine");
+        }
+
+        // a loaded regex that would backtrack still runs on the automaton
+        byte[] p = "(?:a|aa)+c".getBytes();
+        out.reset();
+        RegexBundle.writeAll(out, Arrays.asList(new Regex(p, 0, p.length, Option.NONE, ASCIIEncoding.INSTANCE)));
+        Regex automaton = RegexBundle.readAll(new ByteArrayInputStream(out.toByteArray()))[0];
+        assertTrue(onAutomaton(automaton, str), "automaton lost by the bundle");
+        byte[] name = "month".getBytes();
+        assertTrue(loaded[4].nameToBackrefNumber(name, 0, name.length, null) == 2, "name lookup");
+
+        byte[] corrupt = Arrays.copyOf(bundle, bundle.length);
+        corrupt[0] = 'X';
+        try {
+            RegexBundle.readAll(new ByteArrayInputStream(corrupt));
+            assertTrue(false, "IOException expected");
+        } catch (IOException e) {
+        }
+        corrupt = Arrays.copyOf(bundle, 4 + 4 + 4);
+        corrupt[7]++;
+        try {
+            RegexBundle.readAll(new ByteArrayInputStream(corrupt));
+            assertTrue(false, "IOException expected for another version");
+        } catch (IOException e) {
+        }
+        corrupt = Arrays.copyOf(bundle, bundle.length);
+        corrupt[11]++;
+        try {
+            RegexBundle.readAll(new ByteArrayInputStream(corrupt));
+            assertTrue(false, "IOException expected for another instruction set");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("byte code"), "rejected for another instruction set: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.RegexCache;
+import org.joni.Syntax;
+import org.joni.WarnCallback;
+import org.joni.exception.SyntaxException;
+
+public class TestRegexCache extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    @Override
+    public void test() throws Exception {
+        RegexCache cache = new RegexCache(4, 1);
+        byte[] a = "xa(b+)c".getBytes();
+
+        Regex r1 = cache.get(a, 1, a.length, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT);
+        Regex r2 = cache.get("a(b+)c".getBytes(), 0, 6, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT);
+        assertTrue(r1 == r2, "same key should return the cached regex");
+        assertTrue(cache.hitCount() == 1 && cache.missCount() == 1, "hits/misses: " + cache);
+
+        // the cached key must not alias the caller's array
+        a[3] = 'z';
+        assertTrue(cache.get("a(b+)c".getBytes(), 0, 6, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT) == r1, "key aliased pattern bytes");
+
+        assertTrue(cache.get(a, 1, a.length, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT) != r1, "different bytes");
+        assertTrue(cache.get("a(b+)c".getBytes(), 0, 6, Option.IGNORECASE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT) != r1, "different option");
+        assertTrue(cache.get("a(b+)c".getBytes(), 0, 6, Option.NONE, UTF8Encoding.INSTANCE, Syntax.DEFAULT) != r1, "different encoding");
+        assertTrue(cache.get("a(b+)c".getBytes(), 0, 6, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.Java) != r1, "different syntax");
+        assertTrue(cache.get("a(b+)c".getBytes(), 0, 6, Option.NONE, 0, ASCIIEncoding.INSTANCE, Syntax.DEFAULT, WarnCallback.NONE) != r1, "different case fold flag");
+
+        assertTrue(cache.size() == 4, "size bounded: " + cache);
+        assertTrue(cache.evictionCount() == 2, "evictions: " + cache);
+
+        // errors are not cached
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("a(b".getBytes(), 0, 3, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT);
+                assertTrue(false, "syntax error expected");
+            } catch (SyntaxException se) {
+                nsucc++;
+            }
+        }
+        assertTrue(cache.size() == 4, "failed compile was cached");
+
+        cache.invalidateAll();
+        assertTrue(cache.size() == 0, "invalidateAll");
+
+        // the bound holds in total when it does not divide evenly over the segments
+        cache = new RegexCache(17, 16);
+        for (int i = 0; i < 200; i++) {
+            byte[] reg = ("a{" + i + "}").getBytes();
+            cache.get(reg, 0, reg.length, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT);
+        }
+        assertTrue(cache.size() <= 17, "size above maximum: " + cache);
+
+        testConcurrent();
+    }
+
+    private void testConcurrent() throws Exception {
+        final RegexCache cache = new RegexCache(64);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] reg = ("a{" + (i % 100) + "}b").getBytes();
+                        Regex regex = cache.get(reg, 0, reg.length, Option.NONE, ASCIIEncoding.INSTANCE, Syntax.DEFAULT);
+                        byte[] str = (new String(new char[i % 100]).replace('\0', 'a') + "b").getBytes();
+                        if (regex.matcher(str).match(0, str.length, Option.NONE) != str.length) failures.incrementAndGet();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(failures.get() == 0, "concurrent failures: " + failures.get());
+        assertTrue(cache.size() <= 64, "concurrent size: " + cache);
+        assertTrue(cache.hitCount() + cache.missCount() == 8 * 2000, "concurrent counters: " + cache);
+    }
+}
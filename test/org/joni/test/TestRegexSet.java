@@ -0,0 +1,139 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.util.Arrays;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.RegexSet;
+import org.joni.Syntax;
+
+public class TestRegexSet extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    static final String[] PATTERNS = {
+        "foo\\d+", "ba[rz]", "colou?r", "(?i:hello)", "[あ-ん]{2}", "zzz", "x*", "(a|ab)(c|bcd)",
+        "^GET /", "\\bword\\b", "(a+)\\1", "(?<=q)u", "end$", "(?>x+)y",
+    };
+
+    static final String[] SUBJECTS = {
+        "", "GET /index", "foo12 bar", "colour of HeLLo", "あい", "abcd word", "aa", "qu end", "xxy", "baz zzz end",
+    };
+
+    private void check(RegexSet set, String subject) throws Exception {
+        byte[] str = subject.getBytes(testEncoding());
+        int[] expectedStarts = new int[set.size()];
+        int count = 0;
+        for (int i = 0; i < set.size(); i++) {
+            Matcher m = set.get(i).matcherNoRegion(str, 0, str.length);
+            expectedStarts[i] = m.search(0, str.length, Option.NONE);
+            if (expectedStarts[i] != Matcher.FAILED) count++;
+        }
+        int[] expected = new int[count];
+        count = 0;
+        for (int i = 0; i < set.size(); i++) {
+            if (expectedStarts[i] != Matcher.FAILED) expected[count++] = i;
+        }
+
+        int[] matches = set.matches(str);
+        assertTrue(Arrays.equals(expected, matches), "matches " + subject + ": " + Arrays.toString(matches) + " expected " + Arrays.toString(expected));
+        int[] starts = set.search(str, 0, str.length);
+        assertTrue(Arrays.equals(expectedStarts, starts), "search " + subject + ": " + Arrays.toString(starts) + " expected " + Arrays.toString(expectedStarts));
+    }
+
+    @Override
+    public void test() throws Exception {
+        byte[][] patterns = new byte[PATTERNS.length][];
+        for (int i = 0; i < patterns.length; i++) patterns[i] = PATTERNS[i].getBytes(testEncoding());
+        RegexSet set = new RegexSet(patterns, option(), encoding(), syntax());
+        assertTrue(set.size() == PATTERNS.length, "size");
+
+        for (String subject : SUBJECTS) check(set, subject);
+
+        // enough literals for the automaton based prefilter
+        byte[][] keys = new byte[40][];
+        for (int i = 0; i < keys.length; i++) keys[i] = (i % 2 == 0 ? "key" + i + "=\\d+" : "\\w{0,3}tok" + i + "\\b").getBytes();
+        RegexSet keySet = new RegexSet(keys, option(), encoding(), syntax());
+        check(keySet, "");
+        check(keySet, "none of them");
+        check(keySet, "key2=2 key17= abtok39 key38=4 tok5");
+        check(keySet, "abcdtok1 key3=9 key4=");
+
+        // literal free members run on the combined automaton, multibyte transitions come from its cache
+        byte[][] words = new byte[60][];
+        for (int i = 0; i < words.length; i++) words[i] = ("[a-zé]+ [a-" + (char)('a' + i % 26) + "ö]+\\d{" + (1 + i / 26) + "}").getBytes(testEncoding());
+        RegexSet wordSet = new RegexSet(words, option(), encoding(), syntax());
+        check(wordSet, "héllo wörld héllo wörld");
+        check(wordSet, "héllo wörld héllo wörld7 héllo wörld");
+        check(wordSet, "héllo wörld héllo bö42 héllo wörld héllo ö123");
+
+        Regex regex = new Regex("\\d{2,3}(?:foo|bar)baz");
+        assertTrue(new String(regex.getExactString()).equals("baz"), "exact string " + new String(regex.getExactString()));
+        assertTrue(!regex.isExactIgnoreCase(), "exact case");
+        assertTrue(regex.getExactMinDistance() == 5 && regex.getExactMaxDistance() == 6, "exact distance");
+        assertTrue(new Regex("[a-z]*baz").getExactMaxDistance() == Integer.MAX_VALUE, "unbounded exact distance");
+        assertTrue(new Regex("(?i)abc").isExactIgnoreCase(), "exact ignore case");
+        assertTrue(new Regex("a|b").getExactString() == null, "no exact string");
+
+        byte[] str = "xx foo1 xx".getBytes();
+        assertTrue(Arrays.equals(set.matches(str, 3, 7), new int[] {0, 6}), "subrange");
+        assertTrue(set.search(str, 3, 7)[0] == 0, "subrange start is relative");
+
+        byte[] truncated = {'b', 'a', 'r', (byte)0xe3};
+        assertTrue(Arrays.equals(new RegexSet(new byte[][] {patterns[1], patterns[2]}, option(), encoding()).matches(truncated), new int[] {0}), "truncated subject");
+
+        Regex limited = new Regex("(a|aa)+()\\2c");
+        limited.setRetryLimitInSearch(1000);
+        RegexSet limitedSet = new RegexSet(limited, new Regex("zzz"));
+        byte[] as = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes();
+        assertTrue(Arrays.equals(limitedSet.search(as, 0, as.length), new int[] {Matcher.RETRY_LIMIT_EXCEEDED, Matcher.FAILED}), "search past the retry limit");
+        try {
+            limitedSet.matches(as);
+            assertTrue(false, "IllegalStateException expected");
+        } catch (IllegalStateException e) {
+        }
+
+        try {
+            new RegexSet(new Regex("a"), new Regex("b".getBytes(), 0, 1, Option.NONE, ASCIIEncoding.INSTANCE));
+            assertTrue(false, "mixed encodings accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
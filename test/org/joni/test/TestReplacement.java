@@ -0,0 +1,105 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Replacement;
+import org.joni.Syntax;
+import org.joni.exception.ValueException;
+
+public class TestReplacement extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private Regex regex(String pattern) throws Exception {
+        byte[] reg = pattern.getBytes(testEncoding());
+        return new Regex(reg, 0, reg.length, option(), encoding(), syntax());
+    }
+
+    private void replaceAll(String pattern, String template, String str, String expected) throws Exception {
+        Regex regex = regex(pattern);
+        Replacement replacement = new Replacement(regex, template.getBytes(testEncoding()));
+        byte[] s = str.getBytes(testEncoding());
+        String result = new String(replacement.replaceAll(regex.matcher(s), 0, s.length), testEncoding());
+        assertTrue(result.equals(expected), "/" + pattern + "/ -> '" + template + "' on '" + str + "': '" + result + "' expected: '" + expected + "'");
+    }
+
+    @Override
+    public void test() throws Exception {
+        replaceAll("a", "b", "banana", "bbnbnb");
+        replaceAll("(a)(n)?", "<\\2\\1>", "banana", "b<na><na><a>");
+        replaceAll("(?<x>\\w)(?<y>\\d)", "\\k<y>\\k<x>", "a1b2c", "1a2bc");
+        replaceAll("(?<x>a)|(?<x>b)", "[\\k<x>]", "abc", "[a][b]c");
+        replaceAll("n", "\\`|\\'", "ana", "aa|aa");
+        replaceAll("a", "\\&\\0\\\\\\q\\9", "xa", "xaa\\\\q");
+        replaceAll("", "-", "é", "-é-");
+        replaceAll("é", "e", "été", "ete");
+        replaceAll("x", "y", "abc", "abc");
+
+        Regex regex = regex("(\\w+)@(\\w+)");
+        Replacement replacement = new Replacement(regex, "\\1@***".getBytes());
+        byte[] s = "a@b c@d".getBytes();
+        Matcher m = regex.matcher(s);
+        assertTrue(new String(replacement.replaceFirst(m, 0, s.length)).equals("a@*** c@d"), "replaceFirst");
+
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        assertTrue(replacement.replaceAll(m, 0, s.length, buf) == 2, "replaceAll into a buffer: count");
+        assertTrue(new String(buf.array(), 0, buf.position()).equals("a@*** c@***"), "replaceAll into a buffer");
+
+        try {
+            replacement.replaceAll(m, 0, s.length, ByteBuffer.allocate(4));
+            assertTrue(false, "BufferOverflowException expected");
+        } catch (BufferOverflowException e) {
+        }
+
+        try {
+            new Replacement(regex, "\\k<nope>".getBytes());
+            assertTrue(false, "ValueException expected");
+        } catch (ValueException e) {
+        }
+
+        try {
+            replacement.replaceAll(regex.matcherNoRegion(s), 0, s.length);
+            assertTrue(false, "IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
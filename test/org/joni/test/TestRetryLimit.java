@@ -0,0 +1,107 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.ASCIIEncoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+import org.joni.exception.RetryLimitException;
+
+public class TestRetryLimit extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return ASCIIEncoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "iso-8859-1";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private static byte[]bytes(String s) {
+        return s.getBytes();
+    }
+
+    private static Regex regex(String pattern) {
+        byte[]p = bytes(pattern);
+        return new Regex(p, 0, p.length, Option.NONE, ASCIIEncoding.INSTANCE);
+    }
+
+    private static int search(Matcher matcher, byte[]str) {
+        return matcher.search(0, str.length, Option.NONE);
+    }
+
+    @org.junit.Test
+    @Override
+    public void test() throws Exception {
+        // the look-ahead keeps the patterns on the backtracking machine, the back reference keeps it from memoizing
+        Regex exponential = regex("^(?=a)()\\1(a|aa)+c");
+        byte[]str = bytes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabc");
+
+        Matcher matcher = exponential.matcher(str);
+        matcher.setRetryLimitInMatch(10000);
+        assertTrue(search(matcher, str) == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit in match not reached");
+        assertTrue(search(matcher, str) == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit not reached again");
+        assertTrue(matcher.match(0, str.length, Option.NONE) == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit in match() not reached");
+
+        try {
+            matcher.searchInterruptible(0, str.length, Option.NONE);
+            assertTrue(false, "RetryLimitException expected");
+        } catch (RetryLimitException e) {
+        }
+
+        byte[]small = bytes("aaaac");
+        matcher = exponential.matcher(small);
+        matcher.setRetryLimitInMatch(10000);
+        assertTrue(search(matcher, small) == 0, "match within the retry limit");
+
+        // each start backtracks a little, the whole search a lot
+        Regex quadratic = regex("(?=a)()\\1a*ax");
+        str = bytes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabx");
+        matcher = quadratic.matcher(str);
+        matcher.setRetryLimitInMatch(1000);
+        assertTrue(search(matcher, str) == Matcher.FAILED, "retry limit in match reached");
+        matcher.setRetryLimitInSearch(1000);
+        assertTrue(search(matcher, str) == Matcher.RETRY_LIMIT_EXCEEDED, "retry limit in search not reached");
+        matcher.setRetryLimitInSearch(0);
+        assertTrue(search(matcher, str) == Matcher.FAILED, "retry limit in search not cleared");
+
+        // defaults of the regex apply to its new matchers
+        exponential.setRetryLimitInMatch(10000);
+        str = bytes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabc");
+        assertTrue(search(exponential.matcher(str), str) == Matcher.RETRY_LIMIT_EXCEEDED, "regex retry limit not applied");
+
+        try {
+            exponential.setRetryLimitInSearch(-1);
+            assertTrue(false, "IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
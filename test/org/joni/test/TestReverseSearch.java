@@ -0,0 +1,73 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Syntax;
+
+public class TestReverseSearch extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    // searches backwards from start, the match is expected at from-to
+    private void last(String pattern, String str, int start, int range, int from, int to) throws Exception {
+        byte[] p = pattern.getBytes(testEncoding());
+        byte[] s = str.getBytes(testEncoding());
+        Matcher matcher = new Regex(p, 0, p.length, option(), encoding(), syntax()).matcher(s);
+        int r = matcher.search(start, range, Option.NONE);
+        assertTrue(r == from && (r == Matcher.FAILED || matcher.getEnd() == to), "/" + pattern + "/ '" + str + "' " + start + "-" + range + " expected " + from + "-" + to + " was " + r + "-" + matcher.getEnd());
+    }
+
+    @Override
+    public void test() throws Exception {
+        String log = "x error42 word1 word2 error7 word3";
+        last("[a-z]+\\d{2}", log, log.length(), 0, 6, 9);
+        last("(?:e|w)\\w*?\\d\\b", log, log.length(), 0, 29, 34);
+        last("(?:e|w)\\w*?\\d\\b", log, 28, 0, 22, 28);
+        last("(?:e|w)\\w*?\\d\\b", log, 28, 23, Matcher.FAILED, 0);
+        last("\\berr\\w+", log, log.length(), 0, 22, 28);
+        last("(a|ab)(c|bcd)(?=e)", "abcde abcd", 10, 0, 0, 4);
+        last("^\\w", "ab\ncd", 5, 0, 3, 4);
+        last("é+x", "éxééx", 7, 0, 5, 8);
+        last("é+x", "éxééx", 2, 0, 0, 3);
+        last("(?<=é)é*x", "éxééx", 7, 1, 7, 8);
+        last("(?<=x)é*x", "éxééx", 7, 1, 3, 8);
+        last("a*$", "baa", 3, 0, 3, 3);
+        last("\\Ab+", "bbb", 3, 0, 0, 3);
+    }
+}
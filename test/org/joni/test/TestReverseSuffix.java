@@ -0,0 +1,63 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Option;
+import org.joni.Syntax;
+
+public class TestReverseSuffix extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    @Override
+    public void test() throws Exception {
+        x2s("\\w+@example\\.com", "mail to: bob@example.com", 9, 24);
+        x2s("\\w+@example\\.com", "a@b x@example.org y@example.com", 18, 31);
+        ns("\\w+@example\\.com", "a@b @example.com x@example.org");
+        x2s("[^\"]*\"error\"", "\"info\" \"error\"", 6, 14);
+        x2s("[^\"]*\"error\"", "abc\"error\"", 0, 10);
+        x2s("[^\"]*\"error\"", "abc\"error\"", 0, 2, 2, 10);
+        x2s("(\\w+)@(\\w+)\\.com\\1", "joe@x.com ann@y.comann", 10, 22);
+        x2s("\\d+?x(?<=\\dx)", "a12x", 1, 4);
+        x2s("(?:ab|b)*zz(a)?", "bzabzzb", 2, 6);
+        x2s("[a-c]*(?=b)bzy", "ccbzy", 0, 5);
+        x2s("é+@", "aéé@", 1, 6);
+        x2s("(?:xé)+@", "axéxé@", 1, 8);
+        x2s("[^@é]*é@", "abé@é@", 0, 5);
+        x2s(".*\nz", "ab\nz", 0, 4);
+        ns("[^\"]*\"error\"$", "x\"error\" y\"error\" z");
+    }
+}
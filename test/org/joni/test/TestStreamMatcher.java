@@ -0,0 +1,154 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.joni.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcodings.Encoding;
+import org.jcodings.specific.UTF8Encoding;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.StreamMatcher;
+import org.joni.Syntax;
+
+public class TestStreamMatcher extends Test {
+    @Override
+    public int option() {
+        return Option.DEFAULT;
+    }
+    @Override
+    public Encoding encoding() {
+        return UTF8Encoding.INSTANCE;
+    }
+    @Override
+    public String testEncoding() {
+        return "utf-8";
+    }
+    @Override
+    public Syntax syntax() {
+        return Syntax.DEFAULT;
+    }
+
+    private Regex regex(String pattern) throws Exception {
+        byte[] bytes = pattern.getBytes(testEncoding());
+        return new Regex(bytes, 0, bytes.length, option(), encoding(), syntax());
+    }
+
+    private static List<String> all(Regex regex, byte[] str) {
+        List<String> matches = new ArrayList<String>();
+        Matcher m = regex.matcher(str);
+        int p = 0;
+        while (p <= str.length) {
+            int s = m.search(p, str.length, Option.NONE);
+            if (s == Matcher.FAILED) break;
+            int e = m.getEnd();
+            matches.add(s + "-" + e);
+            p = e > s ? e : s < str.length ? s + regex.getEncoding().length(str, s, str.length) : s + 1;
+        }
+        return matches;
+    }
+
+    private void stream(String pattern, String subject, int window) throws Exception {
+        Regex regex = regex(pattern);
+        byte[] str = subject.getBytes(testEncoding());
+        List<String> expected = all(regex, str);
+        for (int chunk = 1; chunk <= 7; chunk += 3) {
+            final List<String> matches = new ArrayList<String>();
+            StreamMatcher.Callback callback = new StreamMatcher.Callback() {
+                public void match(StreamMatcher matcher, long begin, long end) {
+                    matches.add(begin + "-" + end);
+                }
+            };
+            StreamMatcher sm = window == -1 ? new StreamMatcher(regex) : new StreamMatcher(regex, window);
+            for (int p = 0; p < str.length; p += chunk) sm.feed(str, p, Math.min(p + chunk, str.length), callback);
+            sm.finish(callback);
+            assertTrue(expected.equals(matches), "/" + pattern + "/ chunk " + chunk + ": " + matches + " expected " + expected);
+        }
+
+        final List<String> matches = new ArrayList<String>();
+        StreamMatcher.Callback callback = new StreamMatcher.Callback() {
+            public void match(StreamMatcher matcher, long begin, long end) {
+                matches.add(begin + "-" + end);
+            }
+        };
+        ByteBuffer direct = ByteBuffer.allocateDirect(str.length);
+        direct.put(str).flip();
+        StreamMatcher sm = window == -1 ? new StreamMatcher(regex) : new StreamMatcher(regex, window);
+        sm.feed(direct, callback);
+        sm.finish(callback);
+        assertTrue(expected.equals(matches) && !direct.hasRemaining(), "/" + pattern + "/ direct buffer: " + matches + " expected " + expected);
+
+        matches.clear();
+        sm = window == -1 ? new StreamMatcher(regex) : new StreamMatcher(regex, window);
+        sm.feed(Channels.newChannel(new ByteArrayInputStream(str)), callback);
+        assertTrue(expected.equals(matches), "/" + pattern + "/ channel: " + matches + " expected " + expected);
+    }
+
+    @Override
+    public void test() throws Exception {
+        assertTrue(regex("ab{2,3}c").getMaxMatchLength() == 5, "max match length");
+        assertTrue(regex("a.").getMaxMatchLength() == 1 + UTF8Encoding.INSTANCE.maxLength(), "max match length of any char");
+        assertTrue(regex("ab+").getMaxMatchLength() == -1, "unbounded match length");
+        assertTrue(regex("(?~ab)").getMaxMatchLength() == -1, "absent operator is unbounded");
+
+        String subject = "GET /a HTTP/1.1\nHost: x\nGET /bé HTTP/1.0\n\nGET /c";
+        stream("GET /\\w+", subject, 64);
+        stream("^GET", subject, -1);
+        stream("\\bHTTP\\b", subject, -1);
+        stream("\\d$", subject, -1);
+        stream("(?<=GET )/.", subject, -1);
+        stream("\\AGET", subject, -1);
+        stream("/c\\z", subject, -1);
+        stream("x?", subject, -1);
+        stream("é", subject, -1);
+        stream("[^\\n]+", subject, 32);
+
+        try {
+            new StreamMatcher(regex("a+"));
+            assertTrue(false, "unbounded pattern without a window");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            StreamMatcher sm = new StreamMatcher(regex("a+"), 4);
+            StreamMatcher.Callback callback = new StreamMatcher.Callback() {
+                public void match(StreamMatcher matcher, long begin, long end) {}
+            };
+            sm.feed("baaaaaaaaaab".getBytes(), callback);
+            sm.finish(callback);
+            assertTrue(false, "match longer than the window");
+        } catch (IllegalStateException e) {
+        }
+
+        final List<String> groups = new ArrayList<String>();
+        StreamMatcher sm = new StreamMatcher(regex("(\\d+)-(\\d+)"), 16);
+        sm.feed(new ByteArrayInputStream("x 12-345 y 6-7".getBytes()), new StreamMatcher.Callback() {
+            public void match(StreamMatcher matcher, long begin, long end) {
+                groups.add(matcher.getGroupBegin(1) + "," + matcher.getGroupEnd(2));
+            }
+        });
+        assertTrue(groups.toString().equals("[2,8, 11,14]"), "groups " + groups);
+        assertTrue(sm.getPosition() == 14, "position");
+    }
+}